@@ -0,0 +1,105 @@
+package io.fchk.scrapper;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text stripping, table stripping and whole document parsing over the documents of the corpus, see {@link Fixtures}.
+ * <p>
+ * One operation is one pass over the whole corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class DocumentBenchmark {
+
+    private static final Set<String> TABLE_TEMPLATES = new HashSet<>(Arrays.asList("Q21_1", "Q21_2", "Q31", "Q31_2", "Q71_1", "Q71_2"));
+
+    private final List<PdfDownload> downloads = new ArrayList<>();
+    private final List<PDDocument> documents = new ArrayList<>();
+    private final List<PageContext> tablePages = new ArrayList<>();
+    private final List<PageParser> tableParsers = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+
+        for (File file : Fixtures.documents()) {
+            PdfDownload download = PdfDownload.of(file);
+            downloads.add(download);
+            PDDocument document = PdfUtil.load(download);
+            documents.add(document);
+            for (PageContext page : new PageTextStripper().getPages(document, 0, document.getNumberOfPages())) {
+                PageParser parser = Templates.current().classify(page);
+                if (null != parser && TABLE_TEMPLATES.contains(parser.getName())) {
+                    tablePages.add(page);
+                    tableParsers.add(parser);
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+
+        for (PDDocument document : documents) {
+            ((SharedFontCache) document.getResourceCache()).close();
+            document.close();
+        }
+        downloads.forEach(PdfDownload::close);
+    }
+
+    @Benchmark
+    public void stripText(Blackhole blackhole) throws IOException {
+
+        for (PDDocument document : documents) {
+            blackhole.consume(new PageTextStripper().getPages(document, 0, document.getNumberOfPages()));
+        }
+    }
+
+    /**
+     * Parsing of the pages of the table templates, which is mostly {@link PDFTableStripper#extractTable}
+     */
+    @Benchmark
+    public void extractTables(Blackhole blackhole) {
+
+        for (int i = 0; i < tablePages.size(); i++) {
+            Declaration declaration = new Declaration();
+            tableParsers.get(i).parse(tablePages.get(i), declaration);
+            blackhole.consume(declaration);
+        }
+    }
+
+    /**
+     * Loading, stripping, classification and parsing of every page, as done for every url
+     */
+    @Benchmark
+    public void parsePdf(Blackhole blackhole) throws Exception {
+
+        for (PdfDownload download : downloads) {
+            blackhole.consume(PdfUtil.parsePdf(download));
+        }
+    }
+}
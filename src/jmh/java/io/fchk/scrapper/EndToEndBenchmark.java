@@ -0,0 +1,219 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs the whole scrapper against a local HTTP server serving the documents of the corpus, see {@link Fixtures}, and
+ * reports documents per second, the latency of a document and the peak heap.
+ * <p>
+ * The server adds {@code scrapper.bench.latencyMs} (plus up to {@code scrapper.bench.jitterMs}) to every response and
+ * answers 503 to the first request of a {@code scrapper.bench.errorRate} fraction of the urls, the same on every run,
+ * which the retries get past. Each document is listed {@code scrapper.bench.repeat} times under distinct urls. The run
+ * fails if its output differs from the golden output, or if its throughput is more than
+ * {@code scrapper.bench.maxRegression} below {@code scrapper.bench.baselineDocsPerSec}. Both are checked by default
+ * against the committed corpus, with its golden output and {@link #BASELINE_DOCS_PER_SEC}. With another corpus, they
+ * are checked when {@code scrapper.bench.golden} and {@code scrapper.bench.baselineDocsPerSec} are set.
+ * {@code -Dscrapper.bench.updateGolden=true} writes the golden file from the run instead, by default the one of the
+ * committed corpus.
+ * <p>
+ * Run it with {@code java -cp target/benchmarks.jar io.fchk.scrapper.EndToEndBenchmark}. The scrapper is configured
+ * with system properties read when its classes are loaded, so it runs once per JVM.
+ */
+public class EndToEndBenchmark {
+
+    /**
+     * Documents per second over the committed corpus with the default settings, as measured on a single core, the latency of the server bounds it
+     */
+    static final double BASELINE_DOCS_PER_SEC = 10;
+
+    private static final String COMMITTED_GOLDEN = "src/jmh/resources/corpus/golden.json";
+
+    public static void main(String[] args) throws Exception {
+
+        List<String> failures = run();
+        if (!failures.isEmpty()) {
+            throw new AssertionError(String.join(", ", failures));
+        }
+    }
+
+    /**
+     * Run the scrapper and check its output and throughput.
+     *
+     * @return The checks that failed.
+     */
+    static List<String> run() throws Exception {
+
+        boolean committedCorpus = null == System.getProperty(Fixtures.CORPUS_PROPERTY);
+        long latencyMs = Long.getLong("scrapper.bench.latencyMs", 50L);
+        long jitterMs = Long.getLong("scrapper.bench.jitterMs", 50L);
+        double errorRate = Double.parseDouble(System.getProperty("scrapper.bench.errorRate", "0.02"));
+        int repeat = Integer.getInteger("scrapper.bench.repeat", 25);
+        String golden = System.getProperty("scrapper.bench.golden");
+        String baseline = System.getProperty("scrapper.bench.baselineDocsPerSec", committedCorpus ? String.valueOf(BASELINE_DOCS_PER_SEC) : null);
+        double maxRegression = Double.parseDouble(System.getProperty("scrapper.bench.maxRegression", "0.1"));
+
+        List<File> documents = Fixtures.documents();
+        Set<String> failedOnce = ConcurrentHashMap.newKeySet();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            String uri = exchange.getRequestURI().toString();
+            try {
+                Thread.sleep(latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs) : 0));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String name = exchange.getRequestURI().getPath().substring(1);
+            File file = new File(documents.get(0).getParentFile(), name);
+            if (Math.floorMod(uri.hashCode(), 1000) < errorRate * 1000 && failedOnce.add(uri)) {
+                exchange.sendResponseHeaders(503, -1);
+            } else if (!name.contains("/") && file.isFile()) {
+                exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+                exchange.sendResponseHeaders(200, file.length());
+                try (OutputStream out = exchange.getResponseBody()) {
+                    Files.copy(file.toPath(), out);
+                }
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("bench-server-%d").setDaemon(true).build()));
+        server.start();
+        String base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+
+        File dir = Files.createTempDirectory("scrapper-bench").toFile();
+        File input = new File(dir, "in.xlsx");
+        File output = new File(dir, "out.json");
+        writeInput(input, documents, base, repeat);
+        System.setProperty("scrapper.input", input.getPath());
+        System.setProperty("scrapper.output", output.getPath());
+        System.setProperty("scrapper.format", "json");
+        System.setProperty("scrapper.journal", new File(dir, "out.journal").getPath());
+        System.setProperty("scrapper.previous", new File(dir, "out.previous.json").getPath());
+        System.setProperty("scrapper.delta", new File(dir, "out.delta.ndjson").getPath());
+        System.setProperty("scrapper.cacheDir", new File(dir, "cache").getPath());
+
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        long start = System.nanoTime();
+        PdfUtil.main(new String[0]);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        server.stop(0);
+
+        long count = Metrics.DOCUMENT.getCount();
+        double docsPerSec = count / seconds;
+        System.out.println();
+        System.out.printf("documents          %d (%d failed) in %.1f s%n", count, Metrics.counter("failed_documents").sum(), seconds);
+        System.out.printf("documents/s        %.2f%n", docsPerSec);
+        System.out.printf("document p50 / p99 %.0f / %.0f ms%n", Metrics.DOCUMENT.percentile(0.5) / 1e6, Metrics.DOCUMENT.percentile(0.99) / 1e6);
+        System.out.printf("peak heap          %d MB%n", peakHeap >> 20);
+        System.out.println("output             " + dir);
+
+        List<String> failures = new ArrayList<>();
+        ObjectNode result = relativize((ObjectNode) Json.MAPPER.readTree(output), base);
+        if (Boolean.getBoolean("scrapper.bench.updateGolden")) {
+            File goldenFile = new File(null != golden ? golden : COMMITTED_GOLDEN);
+            Json.MAPPER.writerWithDefaultPrettyPrinter().writeValue(goldenFile, result);
+            System.out.println("golden             written to " + goldenFile);
+        } else if (null != golden || committedCorpus) {
+            JsonNode expected = null != golden ? Json.MAPPER.readTree(new File(golden)) : Json.MAPPER.readTree(Resources.getResource(EndToEndBenchmark.class, Fixtures.CORPUS + "golden.json"));
+            List<String> differences = differences((ObjectNode) expected, result);
+            System.out.println("golden             " + (differences.isEmpty() ? "identical" : differences.size() + " differences " + differences));
+            if (!differences.isEmpty()) {
+                failures.add("output differs from the golden output for " + differences);
+            }
+        }
+        if (null != baseline) {
+            double floor = Double.parseDouble(baseline) * (1 - maxRegression);
+            boolean regressed = docsPerSec < floor;
+            System.out.printf("baseline           %s documents/s, %s%n", baseline, regressed ? String.format("REGRESSED below %.2f", floor) : "ok");
+            if (regressed) {
+                failures.add(String.format("%.2f documents/s, below %.2f", docsPerSec, floor));
+            }
+        }
+        return failures;
+    }
+
+    private static void writeInput(File input, List<File> documents, String base, int repeat) throws IOException {
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); OutputStream out = new FileOutputStream(input)) {
+            Sheet sheet = workbook.createSheet("bench");
+            int r = 0;
+            for (int i = 0; i < repeat; i++) {
+                for (File document : documents) {
+                    Row row = sheet.createRow(r++);
+                    row.createCell(1).setCellValue(document.getName());
+                    row.createCell(3).setCellValue("文字版本");
+                    row.createCell(4).setCellValue(base + document.getName() + "?copy=" + i);
+                }
+            }
+            workbook.write(out);
+        }
+    }
+
+    /**
+     * Key the declarations by the url without the address of the server, which changes from run to run
+     */
+    private static ObjectNode relativize(ObjectNode output, String base) {
+
+        ObjectNode result = Json.MAPPER.createObjectNode();
+        for (Iterator<Map.Entry<String, JsonNode>> it = output.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> e = it.next();
+            result.set(e.getKey().replace(base, ""), e.getValue());
+        }
+        return result;
+    }
+
+    private static List<String> differences(ObjectNode expected, ObjectNode actual) {
+
+        List<String> differences = new ArrayList<>();
+        for (Iterator<String> it = expected.fieldNames(); it.hasNext(); ) {
+            String key = it.next();
+            if (!expected.get(key).equals(actual.get(key))) {
+                differences.add(key);
+            }
+        }
+        for (Iterator<String> it = actual.fieldNames(); it.hasNext(); ) {
+            String key = it.next();
+            if (!expected.has(key)) {
+                differences.add(key);
+            }
+        }
+        return differences;
+    }
+}
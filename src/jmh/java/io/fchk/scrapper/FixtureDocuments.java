@@ -0,0 +1,255 @@
+package io.fchk.scrapper;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the documents of the committed corpus, {@code src/jmh/resources/corpus}, from the fixture pages of
+ * {@code pages.txt}.
+ * <p>
+ * The font is not embedded: its glyphs are never drawn, and the text is read back through its {@code ToUnicode} map
+ * and its widths, so the documents stay a few kilobytes whatever the characters. Run it with
+ * {@code java -cp target/benchmarks.jar io.fchk.scrapper.FixtureDocuments [dir]} after changing {@code pages.txt}, then
+ * write the golden output again, see {@link EndToEndBenchmark}.
+ */
+public class FixtureDocuments {
+
+    private static final float FONT_SIZE = 8;
+    private static final float MARGIN = 72;
+
+    /**
+     * The lines of a page are spread over its height, at most this far apart, so that the tables are inside the
+     * regions where the templates look for them
+     */
+    private static final float MAX_LEADING = 120;
+
+    public static void main(String[] args) throws IOException {
+
+        File dir = new File(args.length > 0 ? args[0] : "src/jmh/resources/corpus");
+        List<String> pages = new ArrayList<>(Fixtures.pages().values());
+        List<String> reversed = new ArrayList<>(pages);
+        Collections.reverse(reversed);
+        Map<String, List<String>> documents = new LinkedHashMap<>();
+        documents.put("declaration-1.pdf", pages);
+        documents.put("declaration-2.pdf", pages.subList(0, pages.size() / 2));
+        documents.put("declaration-3.pdf", pages.subList(pages.size() / 2, pages.size()));
+        documents.put("declaration-4.pdf", reversed);
+        for (Map.Entry<String, List<String>> document : documents.entrySet()) {
+            write(document.getValue(), new File(dir, document.getKey()));
+        }
+    }
+
+    private static void write(List<String> pages, File file) throws IOException {
+
+        // Character code of each character, from 1, in order of appearance
+        Map<Character, Integer> codes = new LinkedHashMap<>();
+        for (String page : pages) {
+            for (char c : page.toCharArray()) {
+                if (c != '\n') {
+                    codes.computeIfAbsent(c, k -> codes.size() + 1);
+                }
+            }
+        }
+        try (PDDocument document = new PDDocument()) {
+            PDType0Font font = new PDType0Font(font(document, codes));
+            for (String page : pages) {
+                String[] lines = page.split("\n");
+                float[][] columns = columns(lines);
+                float width = 0;
+                for (int i = 0; i < lines.length; i++) {
+                    String[] words = lines[i].split(" ");
+                    width = Math.max(width, null == columns[i] ? width(lines[i]) : columns[i][words.length - 1] + width(words[words.length - 1]));
+                }
+                PDPage pdPage = new PDPage(new PDRectangle(Math.max(PDRectangle.A4.getWidth(), width + 2 * MARGIN), PDRectangle.A4.getHeight()));
+                PDResources resources = new PDResources();
+                resources.put(COSName.getPDFName("F1"), font);
+                pdPage.setResources(resources);
+                StringBuilder content = new StringBuilder("BT\n/F1 ").append(FONT_SIZE).append(" Tf\n");
+                float height = pdPage.getMediaBox().getHeight();
+                float leading = Math.min(MAX_LEADING, (height - 2 * MARGIN) / Math.max(1, lines.length - 1));
+                for (int i = 0; i < lines.length; i++) {
+                    float y = height - MARGIN - i * leading;
+                    if (null == columns[i]) {
+                        show(content, MARGIN, y, lines[i], codes);
+                    } else {
+                        String[] words = lines[i].split(" ");
+                        for (int w = 0; w < words.length; w++) {
+                            show(content, MARGIN + columns[i][w], y, words[w], codes);
+                        }
+                    }
+                }
+                content.append("ET\n");
+                PDStream stream = new PDStream(document);
+                try (OutputStream out = stream.createOutputStream()) {
+                    out.write(content.toString().getBytes(StandardCharsets.US_ASCII));
+                }
+                pdPage.setContents(stream);
+                document.addPage(pdPage);
+            }
+            document.save(file);
+        }
+    }
+
+    /**
+     * Lay out as a table the runs of consecutive lines with the same number of words, two or more, so that the table
+     * stripper finds the cells of a row under the headers of their columns.
+     *
+     * @return For each line, the offset of each word, or null for a line written as it is.
+     */
+    private static float[][] columns(String[] lines) {
+
+        float[][] columns = new float[lines.length][];
+        int start = 0;
+        while (start < lines.length) {
+            int count = words(lines[start]);
+            int end = start + 1;
+            while (end < lines.length && count >= 2 && words(lines[end]) == count) {
+                end++;
+            }
+            if (end - start >= 2) {
+                float[] offsets = new float[count];
+                for (int w = 1; w < count; w++) {
+                    float widest = 0;
+                    for (int i = start; i < end; i++) {
+                        widest = Math.max(widest, width(lines[i].split(" ")[w - 1]));
+                    }
+                    offsets[w] = offsets[w - 1] + widest + 2 * FONT_SIZE;
+                }
+                for (int i = start; i < end; i++) {
+                    columns[i] = offsets;
+                }
+            }
+            start = end;
+        }
+        return columns;
+    }
+
+    /**
+     * @return The number of words of a line separated by single spaces, or 0 if the line has other spaces.
+     */
+    private static int words(String line) {
+
+        if (line.isEmpty() || line.startsWith(" ") || line.endsWith(" ") || line.contains("  ")) {
+            return 0;
+        }
+        return line.split(" ").length;
+    }
+
+    private static void show(StringBuilder content, float x, float y, String text, Map<Character, Integer> codes) {
+
+        content.append("1 0 0 1 ").append(x).append(' ').append(y).append(" Tm <");
+        for (char c : text.toCharArray()) {
+            content.append(String.format("%04X", codes.get(c)));
+        }
+        content.append("> Tj\n");
+    }
+
+    /**
+     * A Type0 font mapping each character code to its character, with the width of a CJK font.
+     */
+    private static COSDictionary font(PDDocument document, Map<Character, Integer> codes) throws IOException {
+
+        COSDictionary descriptor = new COSDictionary();
+        descriptor.setItem(COSName.TYPE, COSName.FONT_DESC);
+        descriptor.setName(COSName.FONT_NAME, "FixtureMing");
+        descriptor.setInt(COSName.FLAGS, 4);
+        COSArray bbox = new COSArray();
+        for (int v : new int[]{0, -120, 1000, 880}) {
+            bbox.add(COSInteger.get(v));
+        }
+        descriptor.setItem(COSName.FONT_BBOX, bbox);
+        descriptor.setInt(COSName.ITALIC_ANGLE, 0);
+        descriptor.setInt(COSName.ASCENT, 880);
+        descriptor.setInt(COSName.DESCENT, -120);
+        descriptor.setInt(COSName.CAP_HEIGHT, 700);
+        descriptor.setInt(COSName.STEM_V, 80);
+
+        COSDictionary systemInfo = new COSDictionary();
+        systemInfo.setString(COSName.REGISTRY, "Adobe");
+        systemInfo.setString(COSName.ORDERING, "Identity");
+        systemInfo.setInt(COSName.SUPPLEMENT, 0);
+
+        COSArray widths = new COSArray();
+        for (Map.Entry<Character, Integer> code : codes.entrySet()) {
+            if (code.getKey() < 0x80) {
+                widths.add(COSInteger.get(code.getValue()));
+                COSArray width = new COSArray();
+                width.add(COSInteger.get(code.getKey() == ' ' ? 250 : 500));
+                widths.add(width);
+            }
+        }
+
+        COSDictionary cidFont = new COSDictionary();
+        cidFont.setItem(COSName.TYPE, COSName.FONT);
+        cidFont.setItem(COSName.SUBTYPE, COSName.CID_FONT_TYPE2);
+        cidFont.setName(COSName.BASE_FONT, "FixtureMing");
+        cidFont.setItem(COSName.CIDSYSTEMINFO, systemInfo);
+        cidFont.setItem(COSName.FONT_DESC, descriptor);
+        cidFont.setInt(COSName.DW, 1000);
+        cidFont.setItem(COSName.W, widths);
+        cidFont.setItem(COSName.CID_TO_GID_MAP, COSName.IDENTITY);
+
+        COSArray descendants = new COSArray();
+        descendants.add(cidFont);
+        COSDictionary font = new COSDictionary();
+        font.setItem(COSName.TYPE, COSName.FONT);
+        font.setItem(COSName.SUBTYPE, COSName.TYPE0);
+        font.setName(COSName.BASE_FONT, "FixtureMing");
+        font.setItem(COSName.ENCODING, COSName.IDENTITY_H);
+        font.setItem(COSName.DESCENDANT_FONTS, descendants);
+        font.setItem(COSName.TO_UNICODE, toUnicode(document, codes));
+        return font;
+    }
+
+    private static COSStream toUnicode(PDDocument document, Map<Character, Integer> codes) throws IOException {
+
+        StringBuilder cmap = new StringBuilder("/CIDInit /ProcSet findresource begin\n12 dict begin\nbegincmap\n"
+                                               + "/CIDSystemInfo << /Registry (Adobe) /Ordering (UCS) /Supplement 0 >> def\n"
+                                               + "/CMapName /Adobe-Identity-UCS def\n/CMapType 2 def\n"
+                                               + "1 begincodespacerange\n<0000> <FFFF>\nendcodespacerange\n");
+        List<Map.Entry<Character, Integer>> entries = new ArrayList<>(codes.entrySet());
+        // At most 100 mappings per block
+        for (int from = 0; from < entries.size(); from += 100) {
+            List<Map.Entry<Character, Integer>> block = entries.subList(from, Math.min(entries.size(), from + 100));
+            cmap.append(block.size()).append(" beginbfchar\n");
+            for (Map.Entry<Character, Integer> code : block) {
+                cmap.append(String.format("<%04X> <%04X>\n", code.getValue(), (int) code.getKey()));
+            }
+            cmap.append("endbfchar\n");
+        }
+        cmap.append("endcmap\nCMapName currentdict /CMap defineresource pop\nend\nend\n");
+        COSStream stream = document.getDocument().createCOSStream();
+        try (OutputStream out = stream.createOutputStream(COSName.FLATE_DECODE)) {
+            out.write(cmap.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+        return stream;
+    }
+
+    private static float width(String line) {
+
+        float width = 0;
+        for (char c : line.toCharArray()) {
+            width += c == ' ' ? 250 : c < 0x80 ? 500 : 1000;
+        }
+        return width * FONT_SIZE / 1000;
+    }
+}
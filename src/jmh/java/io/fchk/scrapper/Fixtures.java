@@ -0,0 +1,110 @@
+package io.fchk.scrapper;
+
+import com.google.common.io.Resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inputs of the benchmarks.
+ * <p>
+ * The text fixtures are one representative page per template, in {@code pages.txt}. The documents are the committed
+ * corpus, declarations made of those pages by {@link FixtureDocuments}, or the PDF files of the directory set in
+ * {@code scrapper.bench.corpus}, such as {@code cache/blobs} after a run of the scrapper for real declarations.
+ */
+final class Fixtures {
+
+    private static final String PAGE_MARKER = "=== ";
+
+    /**
+     * The committed corpus, in the resources
+     */
+    static final String CORPUS = "/corpus/";
+    static final String CORPUS_PROPERTY = "scrapper.bench.corpus";
+
+    private Fixtures() {
+
+    }
+
+    /**
+     * @return The text of the fixture page of each template.
+     */
+    static Map<PageParser, String> pages() throws IOException {
+
+        Templates templates = Templates.current();
+        Map<PageParser, String> pages = new LinkedHashMap<>();
+        PageParser current = null;
+        StringBuilder text = new StringBuilder();
+        for (String line : Resources.readLines(Resources.getResource("pages.txt"), StandardCharsets.UTF_8)) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith(PAGE_MARKER)) {
+                if (null != current) {
+                    pages.put(current, text.toString());
+                }
+                String name = line.substring(PAGE_MARKER.length()).trim();
+                current = templates.get(name);
+                if (null == current) {
+                    throw new IllegalStateException("No template " + name + " for the fixture page");
+                }
+                text.setLength(0);
+            } else {
+                text.append(line.replace("{TICK}", PageParser.TICK)).append('\n');
+            }
+        }
+        if (null != current) {
+            pages.put(current, text.toString());
+        }
+        for (Map.Entry<PageParser, String> page : pages.entrySet()) {
+            PageParser recognized = templates.classify(new PageContext(page.getValue(), null));
+            if (recognized != page.getKey()) {
+                throw new IllegalStateException("Fixture page " + page.getKey() + " is recognized as " + recognized);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * @return The documents of the corpus, at most {@code scrapper.bench.documents} of them.
+     */
+    static List<File> documents() throws IOException {
+
+        String directory = System.getProperty(CORPUS_PROPERTY);
+        File corpus = null != directory ? new File(directory) : committedCorpus();
+        File[] files = corpus.listFiles((dir, name) -> name.endsWith(".pdf"));
+        if (null == files || files.length == 0) {
+            throw new IllegalStateException("No PDF in " + corpus.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        int limit = Integer.getInteger("scrapper.bench.documents", 20);
+        return new ArrayList<>(Arrays.asList(files).subList(0, Math.min(limit, files.length)));
+    }
+
+    /**
+     * @return A directory holding a copy of the committed corpus, which is in the jar of the benchmarks.
+     */
+    private static File committedCorpus() throws IOException {
+
+        File dir = Files.createTempDirectory("scrapper-corpus").toFile();
+        dir.deleteOnExit();
+        for (int i = 1; ; i++) {
+            String name = "declaration-" + i + ".pdf";
+            URL resource = Fixtures.class.getResource(CORPUS + name);
+            if (null == resource) {
+                return dir;
+            }
+            File file = new File(dir, name);
+            file.deleteOnExit();
+            Resources.asByteSource(resource).copyTo(com.google.common.io.Files.asByteSink(file));
+        }
+    }
+}
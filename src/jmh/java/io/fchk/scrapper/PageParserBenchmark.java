@@ -0,0 +1,90 @@
+package io.fchk.scrapper;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classification and parsing of the fixture page of each template.
+ * <p>
+ * The page of the table templates is blank, so their parse covers the patterns and an empty pass of the table stripper;
+ * {@link DocumentBenchmark} covers the table stripping of real pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageParserBenchmark {
+
+    /**
+     * Every template of the built-in rules by default
+     */
+    @Param({"Q11", "Q11_2", "Q11_3", "Q12", "Q21_1", "Q21_2", "Q22", "Q31", "Q31_2", "Q32", "Q4", "Q5", "Q6", "Q71_1", "Q71_2", "Q72",
+            "Q8_1", "Q8_2", "Q8_3", "INSTRUCTION_1", "INSTRUCTION_2", "INSTRUCTION_3", "INSTRUCTION_4", "INSTRUCTION_5"})
+    public String template;
+
+    private Templates templates;
+    private PageParser parser;
+    private String text;
+    private PDPage page;
+    private PageContext context;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        templates = Templates.current();
+        parser = templates.get(template);
+        text = Fixtures.pages().get(parser);
+        page = new PDPage();
+        context = new PageContext(text, page);
+    }
+
+    /**
+     * The landmarks of one template only
+     */
+    @Benchmark
+    public boolean recognize() {
+
+        return parser.recognize(context);
+    }
+
+    /**
+     * The landmarks of all the templates, as done for every page
+     */
+    @Benchmark
+    public PageParser classify() {
+
+        return templates.classify(context);
+    }
+
+    /**
+     * A fresh context every time, so that the normalization of the text is included
+     */
+    @Benchmark
+    public Declaration parse() {
+
+        Declaration declaration = new Declaration();
+        parser.parse(new PageContext(text, page), declaration);
+        return declaration;
+    }
+
+    @Benchmark
+    public Integer pageNumber() {
+
+        return PdfUtil.getPageNumber(text);
+    }
+}
@@ -0,0 +1,106 @@
+package io.fchk.scrapper;
+
+/**
+ * Concurrency limit of one host, adjusted at runtime from the latency and the failures of its responses.
+ * <p>
+ * Latency is followed with two moving averages: a short one over the last responses and a long one standing for the
+ * usual latency of the host. While the short one stays within {@link #TOLERANCE} times the long one and the limit is in
+ * use, the limit grows by one per window of responses (additive increase). Once requests start queueing at the server,
+ * the short average rises past that and the limit is shrunk in proportion to the ratio of the two. A 429, 5xx, timeout or
+ * connection failure halves the limit (multiplicative decrease), unless the failed request was sent before the last
+ * decrease, so that the failures of the requests already in flight when the server started to struggle count once.
+ * <p>
+ * Thread safe. The times are in nanoseconds.
+ */
+public class AdaptiveLimit {
+
+    /**
+     * Latency over the long average by more than this factor is taken as queueing at the server
+     */
+    static final double TOLERANCE = 1.5;
+
+    /**
+     * Responses in the short and the long averages
+     */
+    private static final double SHORT_ALPHA = 2.0 / (10 + 1);
+    private static final double LONG_ALPHA = 2.0 / (500 + 1);
+
+    /**
+     * Part of the latency gradient applied per response
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private static final double BACKOFF = 0.5;
+
+    private final int min;
+    private final int max;
+    private double limit;
+    private double shortLatency;
+    private double longLatency;
+    private long lastDecrease;
+
+    public AdaptiveLimit(int initial, int min, int max) {
+
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Invalid limit bounds: min " + min + ", max " + max);
+        }
+        this.min = min;
+        this.max = max;
+        this.limit = Math.max(min, Math.min(max, initial));
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /**
+     * @return The number of requests allowed in flight.
+     */
+    public synchronized int get() {
+
+        return (int) limit;
+    }
+
+    /**
+     * Record a response received.
+     *
+     * @param latency  Time from the request to the status of the response.
+     * @param inFlight Number of requests in flight when the response came, the limit only grows when it is used.
+     */
+    public synchronized void onSuccess(long latency, int inFlight) {
+
+        if (shortLatency == 0) {
+            shortLatency = latency;
+            longLatency = latency;
+        } else {
+            shortLatency += SHORT_ALPHA * (latency - shortLatency);
+            longLatency += LONG_ALPHA * (latency - longLatency);
+            if (longLatency > 2 * shortLatency) {
+                // Back from a slow period, forget it faster than the long average would
+                longLatency = (longLatency + shortLatency) / 2;
+            }
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        if (gradient < 1.0) {
+            set(limit * (1 - SMOOTHING + SMOOTHING * gradient));
+        } else if (2 * inFlight >= limit) {
+            set(limit + 1 / limit);
+        }
+    }
+
+    /**
+     * Record a 429, 5xx, timeout or connection failure.
+     *
+     * @param sent When the failed request was sent, from {@link System#nanoTime()}.
+     */
+    public synchronized void onFailure(long sent) {
+
+        if (sent - lastDecrease < 0) {
+            return;
+        }
+        lastDecrease = System.nanoTime();
+        set(limit * BACKOFF);
+    }
+
+    private void set(double limit) {
+
+        this.limit = Math.max(min, Math.min(max, limit));
+    }
+}
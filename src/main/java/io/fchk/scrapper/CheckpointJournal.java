@@ -0,0 +1,153 @@
+package io.fchk.scrapper;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only journal of the outcome of each url, so that an interrupted run can resume where it stopped.
+ * <p>
+ * Every url processed is appended as one line with its status and, when parsed, its declaration, and the line is
+ * synced to disk before the call returns. Opening an existing journal loads the urls already parsed, which the run
+ * skips and writes to the output straight from the journal.
+ */
+@Slf4j
+public class CheckpointJournal implements Closeable {
+
+    public static final String OK = "OK";
+    public static final String FAILED = "FAILED";
+
+    private final File file;
+    private final Map<String, Declaration> completed = new HashMap<>();
+
+    /**
+     * Urls whose last outcome is a failure
+     */
+    private final Set<String> failed = new HashSet<>();
+    private final FileOutputStream out;
+
+    public CheckpointJournal(File file) throws IOException {
+
+        this.file = file;
+        boolean tornTail = false;
+        if (file.isFile()) {
+            load();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                if (raf.length() > 0) {
+                    raf.seek(raf.length() - 1);
+                    tornTail = raf.read() != '\n';
+                }
+            }
+        }
+        this.out = new FileOutputStream(file, true);
+        if (tornTail) {
+            // Terminate the partial last line so the next entry starts on a line of its own
+            out.write('\n');
+        }
+    }
+
+    private void load() throws IOException {
+
+        int lineNo = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = Json.MAPPER.readValue(line, Entry.class);
+                } catch (IOException e) {
+                    // Most likely the line being written when the previous run died
+                    log.warn("Ignoring unreadable line " + lineNo + " of " + file + ": " + e.getMessage());
+                    continue;
+                }
+                if (OK.equals(entry.getStatus()) && null != entry.getDeclaration()) {
+                    completed.put(entry.getUrl(), entry.getDeclaration());
+                    failed.remove(entry.getUrl());
+                } else {
+                    completed.remove(entry.getUrl());
+                    failed.add(entry.getUrl());
+                }
+            }
+        }
+    }
+
+    /**
+     * Take the declaration of a url completed by a previous run, if there is one.
+     *
+     * @return The declaration, or null if the url has to be processed.
+     */
+    public synchronized Declaration takeCompleted(String url) {
+
+        return completed.remove(url);
+    }
+
+    public synchronized int getCompletedCount() {
+
+        return completed.size();
+    }
+
+    /**
+     * @return The urls whose last outcome, in this run or a previous one, is a failure.
+     */
+    public synchronized Set<String> getFailed() {
+
+        return new HashSet<>(failed);
+    }
+
+    public void recordSuccess(String url, Declaration declaration) throws IOException {
+
+        append(new Entry().setUrl(url).setStatus(OK).setDeclaration(declaration));
+        synchronized (this) {
+            failed.remove(url);
+        }
+    }
+
+    public void recordFailure(String url, Exception error) throws IOException {
+
+        append(new Entry().setUrl(url).setStatus(FAILED).setError(String.valueOf(error.getMessage())));
+        synchronized (this) {
+            failed.add(url);
+        }
+    }
+
+    private synchronized void append(Entry entry) throws IOException {
+
+        byte[] line = Json.MAPPER.writeValueAsBytes(entry);
+        out.write(line);
+        out.write('\n');
+        out.getFD().sync();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        out.close();
+    }
+
+    @Data
+    @Accessors(chain = true)
+    public static class Entry {
+        private String url;
+        private String status;
+        private String error;
+        private Declaration declaration;
+    }
+}
@@ -1,5 +1,6 @@
 package io.fchk.scrapper;
 
+import com.google.common.base.Strings;
 import lombok.Data;
 import lombok.experimental.Accessors;
 import org.apache.commons.lang3.tuple.Pair;
@@ -60,9 +61,48 @@ public class Declaration {
 
     private String q8FreeText;
 
+    /**
+     * Merge the fields parsed from a later page into this declaration. Yes/no answers and single value fields are
+     * replaced, tables are appended and free text is concatenated, the same as parsing both pages into one object.
+     *
+     * @param other The declaration parsed from the later page.
+     * @return This declaration.
+     */
+    public Declaration merge(Declaration other) {
+
+        region = other.region != null ? other.region : region;
+        personName = other.personName != null ? other.personName : personName;
+        q11Yn = other.q11Yn != null ? other.q11Yn : q11Yn;
+        q11Table.addAll(other.q11Table);
+        q12FreeText = concat(q12FreeText, other.q12FreeText);
+        q21Yn = other.q21Yn != null ? other.q21Yn : q21Yn;
+        q21Table.addAll(other.q21Table);
+        q22FreeText = concat(q22FreeText, other.q22FreeText);
+        q31SharesYn = other.q31SharesYn != null ? other.q31SharesYn : q31SharesYn;
+        q31Table.addAll(other.q31Table);
+        q32FreeText = concat(q32FreeText, other.q32FreeText);
+        q4Yn = other.q4Yn != null ? other.q4Yn : q4Yn;
+        q4FreeText = concat(q4FreeText, other.q4FreeText);
+        q5Yn = other.q5Yn != null ? other.q5Yn : q5Yn;
+        q5SponsorName = other.q5SponsorName != null ? other.q5SponsorName : q5SponsorName;
+        q5Date = other.q5Date != null ? other.q5Date : q5Date;
+        q5Region = other.q5Region != null ? other.q5Region : q5Region;
+        q5Purpose = other.q5Purpose != null ? other.q5Purpose : q5Purpose;
+        q5Reason = other.q5Reason != null ? other.q5Reason : q5Reason;
+        q5Benefit = other.q5Benefit != null ? other.q5Benefit : q5Benefit;
+        q6Yn = other.q6Yn != null ? other.q6Yn : q6Yn;
+        q6FreeText = concat(q6FreeText, other.q6FreeText);
+        q71Yn = other.q71Yn != null ? other.q71Yn : q71Yn;
+        q71Table.addAll(other.q71Table);
+        q72FreeText = concat(q72FreeText, other.q72FreeText);
+        q8FreeText = concat(q8FreeText, other.q8FreeText);
+        return this;
+    }
 
+    private static String concat(String text, String more) {
 
-
+        return more != null ? Strings.nullToEmpty(text) + more : text;
+    }
 
     @Data
     @Accessors(chain = true)
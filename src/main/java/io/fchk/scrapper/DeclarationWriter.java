@@ -0,0 +1,97 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes declarations to the output file as soon as they are parsed, instead of keeping them all until the end.
+ * <p>
+ * {@link Format#JSON} writes the same object keyed by url as before. {@link Format#NDJSON} writes one
+ * {@code {"url": ..., "declaration": ...}} object per line, which stays readable up to the last complete line if
+ * the run dies. The output is flushed every {@link #FLUSH_EVERY} declarations and at least every
+ * {@link #FLUSH_INTERVAL_MS} milliseconds.
+ */
+public class DeclarationWriter implements Closeable {
+
+    public static final int FLUSH_EVERY = Integer.getInteger("scrapper.flushEvery", 50);
+    public static final long FLUSH_INTERVAL_MS = Long.getLong("scrapper.flushIntervalMs", 10_000L);
+
+    public enum Format {
+        JSON, NDJSON
+    }
+
+    private final JsonGenerator generator;
+    private final Format format;
+    private int unflushed;
+    private long lastFlush = System.currentTimeMillis();
+    private int count;
+
+    public DeclarationWriter(File file, Format format) throws IOException {
+
+        this(Json.MAPPER, file, format);
+    }
+
+    public DeclarationWriter(ObjectMapper mapper, File file, Format format) throws IOException {
+
+        this.format = format;
+        this.generator = mapper.getFactory().createGenerator(new BufferedOutputStream(new FileOutputStream(file)), JsonEncoding.UTF8);
+        if (format == Format.JSON) {
+            generator.writeStartObject();
+        } else {
+            generator.setRootValueSeparator(new SerializedString("\n"));
+        }
+    }
+
+    public synchronized void write(String url, Declaration declaration) throws IOException {
+
+        if (format == Format.JSON) {
+            generator.writeFieldName(url);
+            generator.writeObject(declaration);
+        } else {
+            generator.writeStartObject();
+            generator.writeStringField("url", url);
+            generator.writeFieldName("declaration");
+            generator.writeObject(declaration);
+            generator.writeEndObject();
+        }
+        count++;
+        unflushed++;
+        if (unflushed >= FLUSH_EVERY || System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MS) {
+            flush();
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+
+        generator.flush();
+        unflushed = 0;
+        lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * @return The number of declarations written so far.
+     */
+    public synchronized int getCount() {
+
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (format == Format.JSON) {
+            generator.writeEndObject();
+        } else if (count > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.close();
+    }
+}
@@ -0,0 +1,197 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the changes between the declarations of this run and those of the previous output, one object per line.
+ * <p>
+ * The previous output is loaded into an index holding only a hash of each field of each declaration, so the memory is a
+ * few longs per declaration and only the fields whose hash differs are written. Lines are
+ * <ul>
+ * <li>{@code {"op":"added","url":...,"declaration":{...}}} for a url not in the previous output</li>
+ * <li>{@code {"op":"changed","url":...,"fields":{...}}} with the new value of each field that changed</li>
+ * <li>{@code {"op":"removed","url":...}} for a url of the previous output no longer in the input, written by
+ * {@link #finish()}</li>
+ * </ul>
+ */
+@Slf4j
+public class DeltaWriter implements Closeable {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * Field names of a serialized declaration, in serialization order, set by the first declaration hashed
+     */
+    private String[] fields;
+    private final Map<String, long[]> previous = new HashMap<>();
+    private final Set<String> seen = new HashSet<>();
+    private final JsonGenerator generator;
+    private int added;
+    private int changed;
+    private int removed;
+
+    /**
+     * @param previousOutput The output of the previous run, in either format, or a file that does not exist.
+     * @param file           The delta file.
+     */
+    public DeltaWriter(File previousOutput, File file) throws IOException {
+
+        if (previousOutput.isFile()) {
+            load(previousOutput);
+            log.info("Loaded " + previous.size() + " declarations from " + previousOutput);
+        }
+        this.generator = Json.MAPPER.getFactory().createGenerator(new BufferedOutputStream(new FileOutputStream(file)), JsonEncoding.UTF8);
+        generator.setRootValueSeparator(new SerializedString("\n"));
+    }
+
+    private void load(File file) throws IOException {
+
+        try (JsonParser p = Json.MAPPER.getFactory().createParser(file)) {
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                String field = p.nextFieldName();
+                if ("url".equals(field)) {
+                    // NDJSON line
+                    String url = p.nextTextValue();
+                    if (!"declaration".equals(p.nextFieldName())) {
+                        throw new IOException("Unexpected line in " + file + " at " + p.getCurrentLocation());
+                    }
+                    p.nextToken();
+                    previous.put(url, hash(p.readValueAs(Declaration.class)));
+                    p.nextToken();
+                } else {
+                    // One object keyed by url
+                    while (null != field) {
+                        p.nextToken();
+                        previous.put(field, hash(p.readValueAs(Declaration.class)));
+                        field = p.nextFieldName();
+                    }
+                }
+            }
+        }
+    }
+
+    private long[] hash(Declaration declaration) {
+
+        return hash((ObjectNode) Json.MAPPER.valueToTree(declaration));
+    }
+
+    private long[] hash(ObjectNode tree) {
+
+        if (null == fields) {
+            List<String> names = new ArrayList<>();
+            tree.fieldNames().forEachRemaining(names::add);
+            fields = names.toArray(new String[0]);
+        }
+        long[] hashes = new long[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            JsonNode value = tree.get(fields[i]);
+            hashes[i] = null == value || value.isNull() ? 0 : HASH.hashString(value.toString(), StandardCharsets.UTF_8).asLong();
+        }
+        return hashes;
+    }
+
+    /**
+     * Compare the declaration of a url with the previous output and write the difference, if any.
+     */
+    public synchronized void write(String url, Declaration declaration) throws IOException {
+
+        seen.add(url);
+        long[] before = previous.get(url);
+        if (null == before) {
+            generator.writeStartObject();
+            generator.writeStringField("op", "added");
+            generator.writeStringField("url", url);
+            generator.writeFieldName("declaration");
+            generator.writeObject(declaration);
+            generator.writeEndObject();
+            added++;
+            return;
+        }
+        ObjectNode tree = Json.MAPPER.valueToTree(declaration);
+        long[] after = hash(tree);
+        boolean started = false;
+        for (int i = 0; i < after.length; i++) {
+            if (after[i] == before[i]) {
+                continue;
+            }
+            if (!started) {
+                generator.writeStartObject();
+                generator.writeStringField("op", "changed");
+                generator.writeStringField("url", url);
+                generator.writeObjectFieldStart("fields");
+                started = true;
+            }
+            generator.writeFieldName(fields[i]);
+            generator.writeTree(tree.get(fields[i]));
+        }
+        if (started) {
+            generator.writeEndObject();
+            generator.writeEndObject();
+            changed++;
+        }
+    }
+
+    /**
+     * Mark a url still in the input whose declaration could not be parsed, so that it is not reported as removed.
+     */
+    public synchronized void skip(String url) {
+
+        seen.add(url);
+    }
+
+    /**
+     * Write the urls of the previous output that were not seen in this run. Only call once every url of the input has
+     * been written or skipped.
+     */
+    public synchronized void finish() throws IOException {
+
+        List<String> gone = new ArrayList<>();
+        for (String url : previous.keySet()) {
+            if (!seen.contains(url)) {
+                gone.add(url);
+            }
+        }
+        Collections.sort(gone);
+        for (String url : gone) {
+            generator.writeStartObject();
+            generator.writeStringField("op", "removed");
+            generator.writeStringField("url", url);
+            generator.writeEndObject();
+            removed++;
+        }
+        previous.clear();
+        log.info("Delta: " + added + " added, " + changed + " changed, " + removed + " removed");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (added + changed + removed > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.close();
+    }
+}
@@ -0,0 +1,334 @@
+package io.fchk.scrapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client for the downloads, with timeouts, retries and compression.
+ * <p>
+ * Connections are kept alive and pooled per host by {@link HttpURLConnection}, up to {@code http.maxConnections}, which
+ * defaults to {@code scrapper.perHostMax} here. A connection goes back to the pool only once its response is read to the
+ * end, so every response is consumed or drained, even the ones retried. The relaxed SSL setup is installed once, when
+ * the class is loaded: installing it again creates a new socket factory, which the pool does not reuse connections
+ * across, and a new session cache, so every connection paid a full TLS handshake.
+ * <p>
+ * Connection failures, timeouts, 429 and 5xx are retried with an exponential backoff with full jitter, or after the
+ * delay in {@code Retry-After} when the server sends one. The latency and the failures of each exchange are reported to
+ * the {@link FetchScheduler}, which adapts the concurrency of the host to them.
+ */
+@Slf4j
+public class FetchClient {
+
+    public static final int CONNECT_TIMEOUT_MS = Integer.getInteger("scrapper.connectTimeoutMs", 10_000);
+    public static final int READ_TIMEOUT_MS = Integer.getInteger("scrapper.readTimeoutMs", 60_000);
+    public static final int RETRIES = Integer.getInteger("scrapper.retries", 3);
+    public static final long BACKOFF_MS = Long.getLong("scrapper.retryBackoffMs", 500L);
+    private static final long MAX_BACKOFF_MS = 30_000L;
+
+    /**
+     * Bodies left with more than this are not worth draining, the connection is closed instead
+     */
+    private static final int MAX_DRAIN = 64 * 1024;
+
+    static {
+        // Read by the JDK when the first connection is made
+        if (null == System.getProperty("http.maxConnections")) {
+            System.setProperty("http.maxConnections", String.valueOf(Integer.getInteger("scrapper.perHostMax", Integer.getInteger("scrapper.concurrency", 16))));
+        }
+        SSLUtilities.trustAllHostnames();
+        SSLUtilities.trustAllHttpsCertificates();
+    }
+
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    /**
+     * Send a GET and hand the response to the handler, retrying the whole exchange, reading of the body included, on
+     * failure.
+     *
+     * @param headers Request headers.
+     * @param handler Reads the response. Responses with a retryable status only reach it once the retries are
+     *                exhausted. It throws {@link StatusException} for a status it does not handle, which is not
+     *                retried.
+     * @return What the handler returned.
+     */
+    public <T> T get(String url, Map<String, String> headers, ResponseHandler<T> handler) throws IOException {
+
+        for (int attempt = 0; ; attempt++) {
+            long retryAfterMs = -1;
+            HttpURLConnection connection = null;
+            Response response = null;
+            // Each exchange is reported to the scheduler once: a failure if the server answers 429 or 5xx, or if the
+            // connection fails before the status or while the body is read, otherwise a success once the body is read.
+            // Failures of the handler itself, like a full disk, say nothing of the server and are not reported
+            boolean reported = false;
+            long sent = System.nanoTime();
+            try {
+                connection = open(url, headers);
+                int status = connection.getResponseCode();
+                long latency = System.nanoTime() - sent;
+                response = new Response(connection, status);
+                if (isRetryable(status)) {
+                    reported = true;
+                    FetchScheduler.onFailure(sent);
+                }
+                if (!isRetryable(status) || attempt >= RETRIES) {
+                    T result;
+                    try {
+                        result = handler.handle(response);
+                    } catch (IOException | RuntimeException e) {
+                        // The body may be stalled, draining it would wait for another read timeout
+                        response.abort();
+                        throw e;
+                    }
+                    response.close();
+                    if (!reported) {
+                        FetchScheduler.onSuccess(latency);
+                    }
+                    return result;
+                }
+                retryAfterMs = retryAfterMs(connection.getHeaderField("Retry-After"));
+                response.close();
+                log.warn("HTTP " + status + " for " + url + ", retrying");
+            } catch (IOException e) {
+                if (!reported && (null == response || response.isBroken())) {
+                    FetchScheduler.onFailure(sent);
+                }
+                if (attempt >= RETRIES || e instanceof StatusException) {
+                    throw e;
+                }
+                if (null != connection) {
+                    connection.disconnect();
+                }
+                log.warn(url + ": " + e.getMessage() + ", retrying");
+            }
+            Metrics.counter("retries").increment();
+            sleep(retryAfterMs >= 0 ? Math.min(retryAfterMs, MAX_BACKOFF_MS) : backoffMs(attempt));
+        }
+    }
+
+    private HttpURLConnection open(String url, Map<String, String> headers) throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        headers.forEach(connection::setRequestProperty);
+        return connection;
+    }
+
+    static boolean isRetryable(int status) {
+
+        return status == 429 || status >= 500;
+    }
+
+    /**
+     * @return A random delay up to the exponential backoff of the attempt.
+     */
+    static long backoffMs(int attempt) {
+
+        long ceiling = Math.min(MAX_BACKOFF_MS, BACKOFF_MS << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * @return The delay in a {@code Retry-After} header in seconds, or -1 if there is none or it is a date.
+     */
+    static long retryAfterMs(String retryAfter) {
+
+        if (null == retryAfter) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void sleep(long ms) throws InterruptedIOException {
+
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * A response status the caller does not handle
+     */
+    public static class StatusException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public StatusException(String url, int status) {
+
+            super("HTTP " + status + " for " + url);
+            this.status = status;
+        }
+
+        public int getStatus() {
+
+            return status;
+        }
+    }
+
+    /**
+     * A response, to close once read so that the connection goes back to the pool.
+     */
+    public static class Response implements Closeable {
+
+        private final HttpURLConnection connection;
+        private final int status;
+        private InputStream raw;
+        private InputStream body;
+
+        /**
+         * Whether reading from the connection failed
+         */
+        private boolean broken;
+
+        Response(HttpURLConnection connection, int status) {
+
+            this.connection = connection;
+            this.status = status;
+        }
+
+        public int getStatus() {
+
+            return status;
+        }
+
+        public String getHeader(String name) {
+
+            return connection.getHeaderField(name);
+        }
+
+        /**
+         * @return The length of the body as received, or -1 if unknown or compressed.
+         */
+        public long getContentLength() {
+
+            return isGzip() ? -1 : connection.getContentLengthLong();
+        }
+
+        /**
+         * @return The body, decompressed.
+         */
+        public InputStream getBody() throws IOException {
+
+            if (null == body) {
+                raw = openRaw();
+                if (null == raw) {
+                    raw = new ByteArrayInputStream(new byte[0]);
+                }
+                body = isGzip() ? new GZIPInputStream(raw) : raw;
+            }
+            return body;
+        }
+
+        /**
+         * @return Whether reading the body from the connection failed, as opposed to failures of the reader.
+         */
+        public boolean isBroken() {
+
+            return broken;
+        }
+
+        /**
+         * @return The body as received, which marks the response broken when a read fails, or null if there is none.
+         */
+        private InputStream openRaw() throws IOException {
+
+            InputStream in;
+            try {
+                in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+            if (null == in) {
+                return null;
+            }
+            return new FilterInputStream(in) {
+
+                @Override
+                public int read() throws IOException {
+
+                    try {
+                        return super.read();
+                    } catch (IOException e) {
+                        broken = true;
+                        throw e;
+                    }
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+
+                    try {
+                        return super.read(b, off, len);
+                    } catch (IOException e) {
+                        broken = true;
+                        throw e;
+                    }
+                }
+            };
+        }
+
+        private boolean isGzip() {
+
+            return "gzip".equalsIgnoreCase(connection.getContentEncoding());
+        }
+
+        /**
+         * Drain what is left of the body, so that the connection can be reused, or close the connection if too much is
+         * left.
+         */
+        @Override
+        public void close() throws IOException {
+
+            if (null == raw) {
+                raw = openRaw();
+            }
+            if (null == raw) {
+                return;
+            }
+            byte[] buffer = new byte[8192];
+            int drained = 0;
+            int n;
+            while ((n = raw.read(buffer)) >= 0) {
+                drained += n;
+                if (drained > MAX_DRAIN) {
+                    connection.disconnect();
+                    return;
+                }
+            }
+            raw.close();
+        }
+
+        /**
+         * Close the connection without reading what is left of the body.
+         */
+        void abort() {
+
+            connection.disconnect();
+        }
+    }
+}
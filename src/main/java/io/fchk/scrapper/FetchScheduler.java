@@ -0,0 +1,240 @@
+package io.fchk.scrapper;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs download tasks in parallel.
+ * <p>
+ * The total number of running tasks is bounded by the size of the worker pool, and the number of running tasks
+ * against a single host is bounded by a per-host limit. Tasks over the per-host limit are parked in a queue of that
+ * host instead of occupying a worker, so a busy host never starves the others.
+ * <p>
+ * The per-host limit is fixed, or an {@link AdaptiveLimit} fed with the responses the tasks of the host get, reported
+ * by {@link FetchClient} through {@link #onSuccess(long)} and {@link #onFailure(long)}, so that it settles on what each host sustains.
+ */
+@Slf4j
+public class FetchScheduler implements AutoCloseable {
+
+    /**
+     * The host of the task running on the current thread
+     */
+    private static final ThreadLocal<Host> CURRENT = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executor;
+    private final int perHostLimit;
+    private final int perHostMin;
+    private final int perHostMax;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * A scheduler with a fixed limit per host.
+     */
+    public FetchScheduler(int globalLimit, int perHostLimit) {
+
+        this(globalLimit, perHostLimit, perHostLimit, perHostLimit);
+    }
+
+    /**
+     * A scheduler with an adaptive limit per host.
+     *
+     * @param perHostLimit The limit of a host until its responses are known.
+     * @param perHostMax   The highest the limit of a host goes.
+     */
+    public FetchScheduler(int globalLimit, int perHostLimit, int perHostMax) {
+
+        this(globalLimit, perHostLimit, 1, perHostMax);
+    }
+
+    private FetchScheduler(int globalLimit, int perHostLimit, int perHostMin, int perHostMax) {
+
+        if (globalLimit < 1 || perHostLimit < 1 || perHostMax < perHostMin) {
+            throw new IllegalArgumentException("Limits must be positive: global " + globalLimit + ", per host " + perHostLimit + " up to " + perHostMax);
+        }
+        this.executor = new ThreadPoolExecutor(globalLimit, globalLimit, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                                               new ThreadFactoryBuilder().setNameFormat("fetch-%d").setDaemon(true).build());
+        this.perHostLimit = perHostLimit;
+        this.perHostMin = perHostMin;
+        this.perHostMax = perHostMax;
+    }
+
+    /**
+     * Schedule a task for the given url. The task starts once both a worker and a slot for the host of the url are
+     * available.
+     *
+     * @param url  The url the task is going to fetch, used to find its host.
+     * @param task The task to run.
+     * @return A future completed with the result of the task.
+     */
+    public <T> CompletableFuture<T> submit(String url, Callable<T> task) {
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Host host = hosts.computeIfAbsent(hostOf(url), Host::new);
+        host.submit(() -> {
+            CURRENT.set(host);
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                CURRENT.remove();
+                host.release();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Report a response to the limit of the host of the task running on the current thread. Ignored outside of a task.
+     *
+     * @param latency Time from the request to the status of the response, in nanoseconds.
+     */
+    public static void onSuccess(long latency) {
+
+        Host host = CURRENT.get();
+        if (null != host) {
+            host.onResponse(latency, false);
+        }
+    }
+
+    /**
+     * Report a 429, a 5xx, a timeout or a connection failure to the limit of the host of the task running on the
+     * current thread. Ignored outside of a task.
+     *
+     * @param sent When the request was sent, from {@link System#nanoTime()}.
+     */
+    public static void onFailure(long sent) {
+
+        Host host = CURRENT.get();
+        if (null != host) {
+            host.onResponse(sent, true);
+        }
+    }
+
+    /**
+     * @return The number of tasks waiting for a worker or for a slot of their host.
+     */
+    public int getQueued() {
+
+        int queued = executor.getQueue().size();
+        for (Host host : hosts.values()) {
+            queued += host.getPending();
+        }
+        return queued;
+    }
+
+    /**
+     * @return The number of tasks running.
+     */
+    public int getActive() {
+
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return The sum of the current limits of the hosts.
+     */
+    public int getLimit() {
+
+        int limit = 0;
+        for (Host host : hosts.values()) {
+            limit += host.limit.get();
+        }
+        return limit;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+
+        executor.shutdown();
+        if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            log.warn("Fetch tasks still running after shutdown, interrupting");
+            executor.shutdownNow();
+        }
+    }
+
+    private static String hostOf(String url) {
+
+        try {
+            String host = URI.create(url).getHost();
+            return null == host ? "" : host.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    private final class Host {
+
+        private final String name;
+        private final AdaptiveLimit limit = new AdaptiveLimit(perHostLimit, perHostMin, perHostMax);
+        private final Queue<Runnable> pending = new ArrayDeque<>();
+        private int running;
+
+        Host(String name) {
+
+            this.name = name;
+        }
+
+        synchronized void submit(Runnable runnable) {
+
+            pending.add(runnable);
+            fill();
+        }
+
+        synchronized int getPending() {
+
+            return pending.size();
+        }
+
+        synchronized void release() {
+
+            running--;
+            fill();
+        }
+
+        private void fill() {
+
+            while (running < limit.get() && !pending.isEmpty()) {
+                running++;
+                executor.execute(pending.poll());
+            }
+        }
+
+        /**
+         * @param time When the request was sent for a failure, the latency for a success.
+         */
+        void onResponse(long time, boolean overloaded) {
+
+            int before = limit.get();
+            if (overloaded) {
+                limit.onFailure(time);
+            } else {
+                int inFlight;
+                synchronized (this) {
+                    inFlight = running;
+                }
+                limit.onSuccess(time, inFlight);
+            }
+            int after = limit.get();
+            if (after < before) {
+                Metrics.counter("host_limit_decreases").increment();
+                log.debug("Limit of " + name + " lowered to " + after);
+            } else if (after > before) {
+                synchronized (this) {
+                    fill();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+
+/**
+ * The object mapper for declarations.
+ * <p>
+ * Jackson writes a {@link Pair} as the one entry object {@code {"left": "right"}}, like any {@link java.util.Map.Entry},
+ * but cannot read it back on its own. This mapper can, so that declarations written to the output or the journal can
+ * be loaded again.
+ */
+public final class Json {
+
+    public static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new SimpleModule().addDeserializer(Pair.class, new PairDeserializer()));
+
+    private Json() {
+
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static class PairDeserializer extends JsonDeserializer<Pair> {
+
+        @Override
+        public Pair deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+
+            if (p.currentToken() != JsonToken.START_OBJECT) {
+                return (Pair) ctxt.handleUnexpectedToken(Pair.class, p);
+            }
+            String left = p.nextFieldName();
+            if (null == left) {
+                return (Pair) ctxt.handleUnexpectedToken(Pair.class, p);
+            }
+            p.nextToken();
+            String right = p.getValueAsString();
+            if (p.nextToken() != JsonToken.END_OBJECT) {
+                return (Pair) ctxt.handleUnexpectedToken(Pair.class, p);
+            }
+            return Pair.of(left, right);
+        }
+    }
+}
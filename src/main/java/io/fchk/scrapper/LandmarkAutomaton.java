@@ -0,0 +1,243 @@
+package io.fchk.scrapper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton finding which of a fixed set of strings occur in a text, in a single scan of the text.
+ * <p>
+ * Characters listed as ignored are skipped while scanning, so the text does not have to be normalized first.
+ * Without ignored characters, the automaton can also locate every occurrence of the strings, see {@link #locate}.
+ */
+public class LandmarkAutomaton {
+
+    private static final int ROOT = 0;
+
+    private final String ignored;
+
+    /**
+     * Transitions of the trie, stored as an open addressing table from (state, char) to the next state
+     */
+    private long[] keys;
+    private int[] targets;
+    private int size;
+
+    private int[] fail;
+    private int[][] outputs;
+    private final int[] lengths;
+
+    /**
+     * @param patterns The strings to find, identified by their index in the list.
+     * @param ignored  The characters to skip in the scanned text.
+     */
+    public LandmarkAutomaton(List<String> patterns, String ignored) {
+
+        this.ignored = ignored;
+        this.lengths = patterns.stream().mapToInt(String::length).toArray();
+        this.keys = new long[64];
+        this.targets = new int[64];
+        Arrays.fill(keys, -1L);
+
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        nodeOutputs.add(new ArrayList<>());
+        for (int p = 0; p < patterns.size(); p++) {
+            int state = ROOT;
+            for (char c : patterns.get(p).toCharArray()) {
+                int next = next(state, c);
+                if (next < 0) {
+                    next = nodeOutputs.size();
+                    nodeOutputs.add(new ArrayList<>());
+                    put(state, c, next);
+                }
+                state = next;
+            }
+            nodeOutputs.get(state).add(p);
+        }
+
+        // Breadth first, so the fail state of a node is complete before its children are visited
+        int states = nodeOutputs.size();
+        fail = new int[states];
+        List<List<int[]>> children = childrenOf(states);
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int[] edge : children.get(ROOT)) {
+            fail[edge[1]] = ROOT;
+            queue.add(edge[1]);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int[] edge : children.get(state)) {
+                char c = (char) edge[0];
+                int child = edge[1];
+                int f = fail[state];
+                while (f != ROOT && next(f, c) < 0) {
+                    f = fail[f];
+                }
+                int target = next(f, c);
+                fail[child] = target >= 0 && target != child ? target : ROOT;
+                nodeOutputs.get(child).addAll(nodeOutputs.get(fail[child]));
+                queue.add(child);
+            }
+        }
+        outputs = new int[states][];
+        for (int s = 0; s < states; s++) {
+            outputs[s] = nodeOutputs.get(s).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Find the patterns occurring in the text.
+     *
+     * @return The indexes of the patterns found.
+     */
+    public BitSet scan(CharSequence text) {
+
+        BitSet found = new BitSet();
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (ignored.indexOf(c) >= 0) {
+                continue;
+            }
+            int next;
+            while ((next = next(state, c)) < 0 && state != ROOT) {
+                state = fail[state];
+            }
+            state = next < 0 ? ROOT : next;
+            for (int p : outputs[state]) {
+                found.set(p);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find where the patterns occur in the text, overlapping occurrences included.
+     *
+     * @return The start of every occurrence of every pattern.
+     */
+    public Occurrences locate(CharSequence text) {
+
+        if (!ignored.isEmpty()) {
+            throw new IllegalStateException("Occurrences cannot be located when characters are ignored");
+        }
+        int[][] starts = new int[lengths.length][];
+        int[] counts = new int[lengths.length];
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = next(state, c)) < 0 && state != ROOT) {
+                state = fail[state];
+            }
+            state = next < 0 ? ROOT : next;
+            for (int p : outputs[state]) {
+                if (null == starts[p]) {
+                    starts[p] = new int[4];
+                } else if (counts[p] == starts[p].length) {
+                    starts[p] = Arrays.copyOf(starts[p], counts[p] * 2);
+                }
+                starts[p][counts[p]++] = i + 1 - lengths[p];
+            }
+        }
+        return new Occurrences(starts, counts);
+    }
+
+    /**
+     * The occurrences of the patterns in a text, in increasing order for each pattern.
+     */
+    public static class Occurrences {
+
+        private final int[][] starts;
+        private final int[] counts;
+
+        Occurrences(int[][] starts, int[] counts) {
+
+            this.starts = starts;
+            this.counts = counts;
+        }
+
+        /**
+         * @return The start of the first occurrence of the pattern at or after the position, or -1 if there is none,
+         * like {@link String#indexOf(String, int)}.
+         */
+        public int indexOf(int pattern, int from) {
+
+            if (null == starts[pattern]) {
+                return -1;
+            }
+            int i = Arrays.binarySearch(starts[pattern], 0, counts[pattern], from);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i < counts[pattern] ? starts[pattern][i] : -1;
+        }
+    }
+
+    private List<List<int[]>> childrenOf(int states) {
+
+        List<List<int[]>> children = new ArrayList<>(states);
+        for (int s = 0; s < states; s++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != -1L) {
+                children.get((int) (keys[i] >>> 16)).add(new int[]{(int) (keys[i] & 0xFFFF), targets[i]});
+            }
+        }
+        return children;
+    }
+
+    private int next(int state, char c) {
+
+        long key = ((long) state << 16) | c;
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return targets[i];
+            }
+            if (keys[i] == -1L) {
+                return -1;
+            }
+        }
+    }
+
+    private void put(int state, char c, int target) {
+
+        if ((size + 1) * 2 > keys.length) {
+            long[] oldKeys = keys;
+            int[] oldTargets = targets;
+            keys = new long[oldKeys.length * 2];
+            targets = new int[oldKeys.length * 2];
+            Arrays.fill(keys, -1L);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1L) {
+                    insert(oldKeys[i], oldTargets[i]);
+                }
+            }
+        }
+        insert(((long) state << 16) | c, target);
+    }
+
+    private void insert(long key, int target) {
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != -1L) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        targets[i] = target;
+        size++;
+    }
+
+    private static int hash(long key) {
+
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
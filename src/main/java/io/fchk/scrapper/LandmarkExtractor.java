@@ -0,0 +1,155 @@
+package io.fchk.scrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the text between landmark strings appearing in order, in a single left-to-right pass over the text.
+ * <p>
+ * The template is written like the regex it replaces: literal landmarks joined by {@code (.*?)} for a gap that is
+ * captured and {@code .*?} for a gap that is skipped, with no other regex syntax and no escaping. Each landmark is
+ * taken at its first occurrence after the previous one, which is also what the lazy DOTALL regex ends up matching, as a
+ * later occurrence only leaves less text for the landmarks after it. The groups are the same, but the cost is linear in
+ * the length of the text, with no backtracking on pages where a landmark is missing.
+ * <p>
+ * The landmarks can also be looked up in the occurrences located by a {@link LandmarkAutomaton}, so that the
+ * extractors of a whole template share a single scan of the page.
+ */
+public class LandmarkExtractor {
+
+    private static final String GROUP = "(.*?)";
+    private static final String SKIP = ".*?";
+
+    private final String[] landmarks;
+
+    /**
+     * Whether the gap after each landmark is captured
+     */
+    private final boolean[] captured;
+
+    private final int groupCount;
+
+    public LandmarkExtractor(String template) {
+
+        List<String> literals = new ArrayList<>();
+        List<Boolean> gaps = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            boolean group = template.startsWith(GROUP, i);
+            if (group || template.startsWith(SKIP, i)) {
+                if (literal.length() == 0) {
+                    throw new IllegalArgumentException("Gap without a landmark before it in " + template);
+                }
+                literals.add(literal.toString());
+                gaps.add(group);
+                literal.setLength(0);
+                i += group ? GROUP.length() : SKIP.length();
+            } else {
+                literal.append(template.charAt(i++));
+            }
+        }
+        if (literal.length() == 0) {
+            throw new IllegalArgumentException("Gap without a landmark after it in " + template);
+        }
+        literals.add(literal.toString());
+        this.landmarks = literals.toArray(new String[0]);
+        this.captured = new boolean[gaps.size()];
+        int groups = 0;
+        for (int g = 0; g < captured.length; g++) {
+            captured[g] = gaps.get(g);
+            groups += captured[g] ? 1 : 0;
+        }
+        this.groupCount = groups;
+    }
+
+    public int getGroupCount() {
+
+        return groupCount;
+    }
+
+    /**
+     * @return The landmarks, in order.
+     */
+    public String[] getLandmarks() {
+
+        return landmarks.clone();
+    }
+
+    public Match match(String text) {
+
+        return new Match(text, null, null);
+    }
+
+    /**
+     * Match with the landmarks looked up in the occurrences located in the text.
+     *
+     * @param ids The index of each landmark in the automaton that located the occurrences.
+     */
+    public Match match(String text, LandmarkAutomaton.Occurrences occurrences, int[] ids) {
+
+        return new Match(text, occurrences, ids);
+    }
+
+    public class Match {
+
+        private final String text;
+        private final LandmarkAutomaton.Occurrences occurrences;
+        private final int[] ids;
+        private int[] bounds;
+
+        Match(String text, LandmarkAutomaton.Occurrences occurrences, int[] ids) {
+
+            this.text = text;
+            this.occurrences = occurrences;
+            this.ids = ids;
+        }
+
+        /**
+         * @return True if all the landmarks are found in order.
+         */
+        public boolean find() {
+
+            int pos = indexOf(0, 0);
+            if (pos < 0) {
+                return false;
+            }
+            pos += landmarks[0].length();
+            int[] found = new int[groupCount * 2];
+            int group = 0;
+            for (int i = 1; i < landmarks.length; i++) {
+                int at = indexOf(i, pos);
+                if (at < 0) {
+                    return false;
+                }
+                if (captured[i - 1]) {
+                    found[group++] = pos;
+                    found[group++] = at;
+                }
+                pos = at + landmarks[i].length();
+            }
+            bounds = found;
+            return true;
+        }
+
+        private int indexOf(int landmark, int from) {
+
+            return null == occurrences ? text.indexOf(landmarks[landmark], from) : occurrences.indexOf(ids[landmark], from);
+        }
+
+        /**
+         * @param group The group, from 1.
+         * @return The text of the group, once found.
+         */
+        public String group(int group) {
+
+            if (null == bounds) {
+                throw new IllegalStateException("No match");
+            }
+            if (group < 1 || group > groupCount) {
+                throw new IndexOutOfBoundsException("No group " + group);
+            }
+            return text.substring(bounds[group * 2 - 2], bounds[group * 2 - 1]);
+        }
+    }
+}
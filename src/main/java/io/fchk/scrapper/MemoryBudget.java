@@ -0,0 +1,86 @@
+package io.fchk.scrapper;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.ScratchFile;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Heap budget for the stream data of the documents being parsed, shared by all the documents loaded at the same time.
+ * <p>
+ * Each document gets a PDFBox {@link ScratchFile} that keeps up to {@link #DOCUMENT_LIMIT} bytes of decoded streams,
+ * images for scanned declarations, on the heap and spills the rest to a temp file. The allowance of a document is taken
+ * from the budget when the document is loaded and given back when the document is closed, so when many documents are
+ * open at once the later ones get less, down to none, and spill to disk instead of running out of heap.
+ */
+public class MemoryBudget {
+
+    public static final long DOCUMENT_LIMIT = Long.getLong("scrapper.documentMemory", 64L * 1024 * 1024);
+
+    private final long total;
+    private long available;
+
+    public MemoryBudget(long total) {
+
+        this.total = total;
+        this.available = total;
+    }
+
+    /**
+     * @return A scratch file holding up to the allowance of the document on the heap, which is given back when the
+     * scratch file, or the document using it, is closed.
+     */
+    public ScratchFile scratchFile() throws IOException {
+
+        long allowance = reserve();
+        MemoryUsageSetting setting = allowance > 0 ? MemoryUsageSetting.setupMixed(allowance) : MemoryUsageSetting.setupTempFileOnly();
+        if (allowance < DOCUMENT_LIMIT) {
+            Metrics.counter("reduced_memory_documents").increment();
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        try {
+            return new ScratchFile(setting) {
+                @Override
+                public void close() throws IOException {
+
+                    try {
+                        super.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            release(allowance);
+                        }
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            release(allowance);
+            throw e;
+        }
+    }
+
+    private synchronized long reserve() {
+
+        long allowance = Math.min(DOCUMENT_LIMIT, available);
+        available -= allowance;
+        return allowance;
+    }
+
+    private synchronized void release(long allowance) {
+
+        available += allowance;
+    }
+
+    /**
+     * @return The bytes of the budget not given to a document.
+     */
+    public synchronized long getAvailable() {
+
+        return available;
+    }
+
+    public long getTotal() {
+
+        return total;
+    }
+}
@@ -0,0 +1,248 @@
+package io.fchk.scrapper;
+
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency histograms of the stages of the pipeline, counters of what went through them and gauges of the work waiting
+ * between them.
+ * <p>
+ * Everything is recorded in memory, shown as a table at the end of the run and, when {@code scrapper.metricsPort} is
+ * set, served on {@code http://localhost:<port>/metrics} in the Prometheus text format while the run goes.
+ */
+@Slf4j
+public final class Metrics {
+
+    private static final ConcurrentMap<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    public static final Histogram DOCUMENT = stage("document");
+    public static final Histogram DOWNLOAD = stage("download");
+    public static final Histogram LOAD = stage("load");
+    public static final Histogram STRIP = stage("strip");
+    public static final Histogram PAGE_NUMBER = stage("page_number");
+    public static final Histogram CLASSIFY = stage("classify");
+    public static final Histogram OUTPUT = stage("output");
+
+    private Metrics() {
+
+    }
+
+    /**
+     * @return The latency histogram of a stage, created on first use.
+     */
+    public static Histogram stage(String stage) {
+
+        return HISTOGRAMS.computeIfAbsent("stage=\"" + stage + "\"", k -> new Histogram());
+    }
+
+    /**
+     * @return The latency histogram of the parse of one template.
+     */
+    public static Histogram parse(PageParser parser) {
+
+        return HISTOGRAMS.computeIfAbsent("stage=\"parse\",template=\"" + parser.getName() + "\"", k -> new Histogram());
+    }
+
+    /**
+     * @return A counter, created on first use, exposed as {@code scrapper_<name>_total}.
+     */
+    public static LongAdder counter(String name) {
+
+        return COUNTERS.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * Expose a value read when the metrics are served, as {@code scrapper_<name>}, replacing the gauge of the same name.
+     */
+    public static void gauge(String name, LongSupplier value) {
+
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * Serve the metrics on the loopback interface until the returned server is stopped.
+     */
+    public static HttpServer serve(int port) throws IOException {
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        log.info("Serving metrics on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/metrics");
+        return server;
+    }
+
+    /**
+     * @return The metrics in the Prometheus text exposition format.
+     */
+    public static String prometheus() {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP scrapper_stage_seconds Latency of the stages of the pipeline\n");
+        sb.append("# TYPE scrapper_stage_seconds histogram\n");
+        for (Map.Entry<String, Histogram> e : HISTOGRAMS.entrySet()) {
+            String labels = e.getKey();
+            Histogram h = e.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < Histogram.BOUNDS.length; i++) {
+                cumulative += h.buckets[i].sum();
+                sb.append("scrapper_stage_seconds_bucket{").append(labels).append(",le=\"").append(seconds(Histogram.BOUNDS[i])).append("\"} ")
+                  .append(cumulative).append('\n');
+            }
+            sb.append("scrapper_stage_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(h.getCount()).append('\n');
+            sb.append("scrapper_stage_seconds_sum{").append(labels).append("} ").append(seconds(h.sum.sum())).append('\n');
+            sb.append("scrapper_stage_seconds_count{").append(labels).append("} ").append(h.getCount()).append('\n');
+        }
+        for (Map.Entry<String, LongAdder> e : COUNTERS.entrySet()) {
+            sb.append("# TYPE scrapper_").append(e.getKey()).append("_total counter\n");
+            sb.append("scrapper_").append(e.getKey()).append("_total ").append(e.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> e : GAUGES.entrySet()) {
+            sb.append("# TYPE scrapper_").append(e.getKey()).append(" gauge\n");
+            sb.append("scrapper_").append(e.getKey()).append(' ').append(e.getValue().getAsLong()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return A table of the count, total, mean, percentiles and maximum of each stage, and of the counters.
+     */
+    public static String summary() {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-40s %8s %10s %10s %10s %10s %10s%n", "stage", "count", "total s", "mean ms", "p50 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, Histogram> e : HISTOGRAMS.entrySet()) {
+            Histogram h = e.getValue();
+            long count = h.getCount();
+            if (count == 0) {
+                continue;
+            }
+            sb.append(String.format("%-40s %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", e.getKey().replace("\"", ""), count, h.sum.sum() / 1e9,
+                                    h.sum.sum() / 1e6 / count, h.percentile(0.5) / 1e6, h.percentile(0.99) / 1e6, h.max.get() / 1e6));
+        }
+        for (Map.Entry<String, LongAdder> e : COUNTERS.entrySet()) {
+            sb.append(String.format("%-40s %8d%n", e.getKey(), e.getValue().sum()));
+        }
+        return sb.toString();
+    }
+
+    private static String seconds(long nanos) {
+
+        return Double.toString(nanos / 1e9);
+    }
+
+    /**
+     * Latency histogram with fixed buckets doubling from 50 microseconds to about 2 minutes.
+     */
+    public static class Histogram {
+
+        static final long[] BOUNDS = new long[22];
+
+        static {
+            for (int i = 0; i < BOUNDS.length; i++) {
+                BOUNDS[i] = 50_000L << i;
+            }
+        }
+
+        private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+
+            int i = 0;
+            while (i < BOUNDS.length && nanos > BOUNDS[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sum.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        /**
+         * Record the time until the returned sample is closed, for use in try-with-resources.
+         */
+        public Sample start() {
+
+            return new Sample(this, System.nanoTime());
+        }
+
+        public long getCount() {
+
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        /**
+         * @return An estimate of the percentile in nanoseconds, interpolated within its bucket.
+         */
+        public double percentile(double p) {
+
+            long[] counts = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            double rank = p * total;
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0 && seen + counts[i] >= rank) {
+                    double lower = i == 0 ? 0 : BOUNDS[i - 1];
+                    double upper = i < BOUNDS.length ? Math.min(BOUNDS[i], max.get()) : max.get();
+                    return lower + (upper - lower) * (rank - seen) / counts[i];
+                }
+                seen += counts[i];
+            }
+            return 0;
+        }
+    }
+
+    public static class Sample implements AutoCloseable {
+
+        private final Histogram histogram;
+        private final long start;
+
+        Sample(Histogram histogram, long start) {
+
+            this.histogram = histogram;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+}
@@ -10,9 +10,7 @@ import org.apache.pdfbox.text.TextPosition;
 
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -41,24 +39,28 @@ public class PDFTableStripper extends PDFTextStripper {
     private String leftColumnHeader;
     private String rightColumnHeader;
     private String bottomText;
-    private List<Pair<String,String>> cellText = new ArrayList<>();
+    private final List<Pair<String,String>> cellText = new ArrayList<>();
 
     /*
      *  Used in methods derived from DrawPrintTextLocations
      */
-    private AffineTransform flipAT;
-    private AffineTransform rotateAT;
+    private final AffineTransform flipAT = new AffineTransform();
+    private final AffineTransform rotateAT = new AffineTransform();
 
     /**
      * Regions updated by calls to writeString
      */
-    private Set<Rectangle2D> boxes;
+    private final Set<Rectangle2D> boxes = new HashSet<>();
 
 
     /**
      * Region in which to find table (otherwise whole page)
      */
     private Rectangle2D regionArea;
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
 
     /**
      * Number of rows in inferred table
@@ -75,6 +77,11 @@ public class PDFTableStripper extends PDFTextStripper {
      */
     private PDFTextStripperByArea regionStripper;
 
+    /**
+     * Page without content, processed after each table to release the page of the table
+     */
+    private final PDPage blankPage = new PDPage();
+
     /**
      * 1D intervals - used for calculateTableRegions()
      *
@@ -132,9 +139,29 @@ public class PDFTableStripper extends PDFTextStripper {
         super.setShouldSeparateByBeads(false);
         regionStripper = new PDFTextStripperByArea();
         regionStripper.setSortByPosition(true);
+        reset(leftColumnHeader, rightColumnHeader, bottomText);
+    }
+
+    /**
+     * Prepare this stripper for another table, so that one instance can be reused across pages.
+     *
+     * @param leftColumnHeader  Header of the left column.
+     * @param rightColumnHeader Header of the right column.
+     * @param bottomText        Text right below the table.
+     */
+    public void reset(String leftColumnHeader, String rightColumnHeader, String bottomText) {
+
         this.leftColumnHeader = leftColumnHeader;
         this.rightColumnHeader = rightColumnHeader;
         this.bottomText = bottomText;
+        c1x = 0;
+        c2x = 0;
+        btm = false;
+        lastY = 0;
+        l.setLength(0);
+        r.setLength(0);
+        cellText.clear();
+        setRegion(null);
     }
 
     /**
@@ -145,6 +172,12 @@ public class PDFTableStripper extends PDFTextStripper {
     public void setRegion(Rectangle2D rect) {
 
         regionArea = rect;
+        if (null != rect) {
+            minX = rect.getMinX();
+            minY = rect.getMinY();
+            maxX = rect.getMaxX();
+            maxY = rect.getMaxY();
+        }
     }
 
     public int getRows() {
@@ -176,14 +209,14 @@ public class PDFTableStripper extends PDFTextStripper {
         setStartPage(getCurrentPageNo());
         setEndPage(getCurrentPageNo());
 
-        boxes = new HashSet<Rectangle2D>();
+        boxes.clear();
         // flip y-axis
-        flipAT = new AffineTransform();
+        flipAT.setToIdentity();
         flipAT.translate(0, pdPage.getBBox().getHeight());
         flipAT.scale(1, -1);
 
         // page may be rotated
-        rotateAT = new AffineTransform();
+        rotateAT.setToIdentity();
         int rotation = pdPage.getRotation();
         if (rotation != 0) {
             PDRectangle mediaBox = pdPage.getMediaBox();
@@ -203,18 +236,40 @@ public class PDFTableStripper extends PDFTextStripper {
             rotateAT.rotate(Math.toRadians(rotation));
         }
         // Trigger processing of the document so that writeString is called.
-        try (Writer dummy = new OutputStreamWriter(new ByteArrayOutputStream())) {
-            super.output = dummy;
+        super.output = NULL_WRITER;
+        try {
             super.processPage(pdPage);
+        } finally {
+            // The stripper keeps the last page processed and its glyphs, which keep the whole document reachable while
+            // the stripper waits for the next table of its thread. Process a blank page to let go of them
+            super.processPage(blankPage);
         }
+    }
 
 
-    }
 
+    /**
+     * Nothing is written by this stripper, the text goes to {@link #cellText}
+     */
+    private static final Writer NULL_WRITER = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+
+        }
 
+        @Override
+        public void flush() {
 
-    private StringBuilder l = new StringBuilder();
-    private StringBuilder r = new StringBuilder();
+        }
+
+        @Override
+        public void close() {
+
+        }
+    };
+
+    private final StringBuilder l = new StringBuilder();
+    private final StringBuilder r = new StringBuilder();
     private double lastY;
 
     /**
@@ -232,30 +287,31 @@ public class PDFTableStripper extends PDFTextStripper {
                 //Table end is found
                 return;
             }
-            if (string.replace(" ","").contains(leftColumnHeader)) {
+            if (indexIgnoringSpaces(string, leftColumnHeader) >= 0) {
                 c1x = textPositions.get(0).getX()-3;
                 return;
             }
-            if (string.replace(" ","").contains(rightColumnHeader)) {
-                int pos = string.indexOf(rightColumnHeader);
+            int pos = indexIgnoringSpaces(string, rightColumnHeader);
+            if (pos >= 0) {
                 c2x = textPositions.get(pos).getX()-3;
                 return;
             }
-            if (string.replace(" ","").contains(bottomText)) {
+            if (indexIgnoringSpaces(string, bottomText) >= 0) {
                 btm = true;
                 cellText.add(Pair.of(l.toString().trim(), r.toString().trim()));
                 return;
             }
             if (c1x > 0 && c2x > 0) {
 
-                for (TextPosition p : textPositions) {
+                for (int i = 0, n = textPositions.size(); i < n; i++) {
+                    TextPosition p = textPositions.get(i);
                     if(lastY==0){
                         lastY = p.getY();
                     }else if (p.getY() - lastY >10){
                         //new line
                         cellText.add(Pair.of(l.toString().trim(), r.toString().trim()));
-                        l = new StringBuilder();
-                        r = new StringBuilder();
+                        l.setLength(0);
+                        r.setLength(0);
                         lastY = p.getY();
                     }
                     if(p.getX()<c2x){
@@ -264,19 +320,41 @@ public class PDFTableStripper extends PDFTextStripper {
                         r.append(p.getUnicode());
                     }
                 }
-//                if (l.length() > 0 || r.length() > 0) {
-//                    if(l.length()==0 && cellText.get(cellText.size() - 1).getRight().isEmpty()){
-//                        Pair<String, String> pair = cellText.remove(cellText.size() - 1);
-//                        cellText.add( Pair.of(pair.getLeft(), r.toString()));
-//                    }else{
-//                        cellText.add(Pair.of(l.toString(), r.toString()));
-//                    }
-//
-//                }
             }
         }
     }
 
+    /**
+     * Find a text in a string, ignoring the spaces of the string, without building a new string.
+     *
+     * @return The index in the string of the first character of the match, or -1 if there is none.
+     */
+    static int indexIgnoringSpaces(String string, String text) {
+
+        if (text.isEmpty()) {
+            return 0;
+        }
+        int length = string.length();
+        outer:
+        for (int start = 0; start < length; start++) {
+            if (string.charAt(start) == ' ') {
+                continue;
+            }
+            int i = start;
+            for (int j = 0; j < text.length(); j++) {
+                while (i < length && string.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i >= length || string.charAt(i) != text.charAt(j)) {
+                    continue outer;
+                }
+                i++;
+            }
+            return start;
+        }
+        return -1;
+    }
+
     /**
      * This method does nothing in this derived class, because beads and regions are incompatible. Beads are
      * ignored when stripping by area.
@@ -295,7 +373,10 @@ public class PDFTableStripper extends PDFTextStripper {
     @Override
     protected void processTextPosition(TextPosition text) {
 
-        if (regionArea != null && !regionArea.contains(text.getX(), text.getY())) {
+        // Same as regionArea.contains, on bounds cached by setRegion
+        float x = text.getX();
+        float y = text.getY();
+        if (regionArea != null && !(x >= minX && y >= minY && x < maxX && y < maxY)) {
             // skip character
         } else {
             super.processTextPosition(text);
@@ -0,0 +1,75 @@
+package io.fchk.scrapper;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * A page being parsed, with the normalized forms of its text computed once, on first use.
+ */
+public class PageContext {
+
+    private final String rawText;
+    private final PDPage page;
+
+    private String text;
+    private String strippedText;
+
+    public PageContext(String rawText, PDPage page) {
+
+        this.rawText = rawText;
+        this.page = page;
+    }
+
+    /**
+     * @return The text as extracted by the text stripper.
+     */
+    public String getRawText() {
+
+        return rawText;
+    }
+
+    /**
+     * @return The page, for the parsers working on text positions.
+     */
+    public PDPage getPage() {
+
+        return page;
+    }
+
+    /**
+     * @return The text without line breaks.
+     */
+    public String getText() {
+
+        if (null == text) {
+            text = remove(rawText, "\n\r");
+        }
+        return text;
+    }
+
+    /**
+     * @return The text without line breaks and spaces.
+     */
+    public String getStrippedText() {
+
+        if (null == strippedText) {
+            strippedText = remove(getText(), " ");
+        }
+        return strippedText;
+    }
+
+    private static String remove(String s, String chars) {
+
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (chars.indexOf(c) >= 0) {
+                if (null == sb) {
+                    sb = new StringBuilder(s.length()).append(s, 0, i);
+                }
+            } else if (null != sb) {
+                sb.append(c);
+            }
+        }
+        return null == sb ? s : sb.toString();
+    }
+}
@@ -2,439 +2,378 @@ package io.fchk.scrapper;
 
 import com.google.common.base.Strings;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.RegExUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 
 import java.awt.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.util.Map;
+
+/**
+ * A template of declaration page, compiled from its rules, see {@link TemplateRules}.
+ * <p>
+ * The landmarks of all the patterns of the template are compiled into one automaton, which locates them in a single
+ * scan of the page; every field rule then looks its landmarks up in the occurrences instead of searching the text
+ * again. The properties of {@link Declaration} the rules fill are resolved once, when the template is compiled.
+ */
 @Slf4j
-public enum PageParser {
+public class PageParser {
 
-    Q11(new String[][]{{"第1類", "受薪東主、合夥人或董事職位", "你有否擔任公共或私營公司的受薪東主"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    public static final String TICK = "\uf0fc";
 
-            Pattern ynQuestion = Pattern.compile("合夥人或董事職位？(.*?)請在合適空格內劃", Pattern.DOTALL);
-            Matcher m = ynQuestion.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                String answer = RegExUtils.removeAll(m.group(1), " ");
-                if (answer.contains("有" + TICK)) {
-                    declaration.setQ11Yn(true);
-                } else if (answer.contains("否" + TICK)) {
-                    declaration.setQ11Yn(false);
-                }
-            }
+    private final String name;
 
-            Pattern companyPositionPattern = Pattern.compile("公司名稱(.*?)該公司的業務性質(.*?)身份(.*?)該公司的所有控權公司.*?如有的話(.*?)" + "\\(若你有更多受薪東主", Pattern.DOTALL);
-            Matcher m1 = companyPositionPattern.matcher(removeLineBreak(content.getLeft()));
-            if (m1.find()) {
-                Declaration.CompanyPosition cp = new Declaration.CompanyPosition();
-                cp.setCompanyName(removeNonWord(m1.group(1)));
-                if (StringUtils.isBlank(cp.getCompanyName())) {
-                    return;
-                }
-                cp.setNature(removeNonWord(m1.group(2)));
-                String answer = RegExUtils.removeAll(m1.group(3), " ");
-                List<String> positions = new ArrayList<>();
-                if (answer.contains(TICK + "東主")) {
-                    positions.add("東主");
-                } else if (answer.contains(TICK + "合夥人")) {
-                    positions.add("合夥人");
-                } else if (answer.contains(TICK + "董事")) {
-                    positions.add("董事");
-                } else if (answer.contains(TICK + "其他(請註明)")) {
-                    positions.add("其他: " + answer.split("其他\\(請註明\\)")[1]);
-                }
-                cp.setPosition(positions);
-                cp.setHolding(removeNonWord(m1.group(4)));
-                declaration.getQ11Table().add(cp);
-            }
-        }
-    }, Q11_2(new String[][]{{"詳細資料", "公司名稱", "該公司的業務性質", "若你有更多受薪東主、合夥人或董事職位須登記"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
-
-            Pattern companyPositionPattern = Pattern.compile("公司名稱(.*?)該公司的業務性質(.*?)身份(.*?)該公司的所有控權公司.*?如有的話(.*?)" + "\\(若你有更多受薪東主", Pattern.DOTALL);
-            Matcher m1 = companyPositionPattern.matcher(removeLineBreak(content.getLeft()));
-            if (m1.find()) {
-                Declaration.CompanyPosition cp = new Declaration.CompanyPosition();
-                cp.setCompanyName(removeNonWord(m1.group(1)));
-                if (StringUtils.isBlank(cp.getCompanyName())) {
-                    return;
-                }
-                cp.setNature(removeNonWord(m1.group(2)));
-                String answer = StringUtils.removeAll(m1.group(3), " ");
-                List<String> positions = new ArrayList<>();
-                if (answer.contains(TICK + "東主")) {
-                    positions.add("東主");
-                } else if (answer.contains(TICK + "合夥人")) {
-                    positions.add("合夥人");
-                } else if (answer.contains(TICK + "董事")) {
-                    positions.add("董事");
-                } else if (answer.contains(TICK + "其他(請註明)")) {
-                    positions.add("其他: " + answer.split("其他\\(請註明\\)")[1]);
-                }
-                cp.setPosition(positions);
-                cp.setHolding(removeNonWord(m1.group(4)));
-                declaration.getQ11Table().add(cp);
-            }
-        }
-    }, Q11_3(new String[][]{{"第1類", "受薪東主、合夥人或董事職位", "續上頁", "如有需要，請影印本頁並在每頁簽署"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
-
-            Pattern companyPositionPattern = Pattern.compile("公司名稱(.*?)該公司的業務性質(.*?)身份(.*?)該公司的所有控權公司.*?如有的話(.*?)"
-                                                             + "公司名稱(.*?)該公司的業務性質(.*?)身份(.*?)該公司的所有控權公司.*?如有的話(.*?)"
-                                                             + "公司名稱(.*?)該公司的業務性質(.*?)身份(.*?)該公司的所有控權公司.*?如有的話(.*?)"
-                                                             + "公司名稱(.*?)該公司的業務性質(.*?)身份(.*?)該公司的所有控權公司.*?如有的話(.*?)"
-                                                             + "\\(如有需要，請影印本頁並在每頁簽署", Pattern.DOTALL);
-            Matcher m1 = companyPositionPattern.matcher(removeLineBreak(content.getLeft()));
-            if (m1.find()) {
-
-                for (int i = 0; i < 4; i++) {
-                    Declaration.CompanyPosition cp = new Declaration.CompanyPosition();
-                    cp.setCompanyName(removeNonWord(m1.group(i * 4 + 1)));
-                    if (StringUtils.isBlank(cp.getCompanyName())) {
-                        continue;
-                    }
-                    cp.setNature(removeNonWord(m1.group(i * 4 + 2)));
-                    String answer = StringUtils.removeAll(m1.group(i * 4 + 3), " ");
-                    List<String> positions = new ArrayList<>();
-                    if (answer.contains(TICK + "東主")) {
-                        positions.add("東主");
-                    } else if (answer.contains(TICK + "合夥人")) {
-                        positions.add("合夥人");
-                    } else if (answer.contains(TICK + "董事")) {
-                        positions.add("董事");
-                    } else if (answer.contains(TICK + "其他(請註明)")) {
-                        positions.add("其他: " + answer.split("其他\\(請註明\\)")[1]);
-                    }
-                    cp.setPosition(positions);
-                    cp.setHolding(removeNonWord(m1.group(i * 4 + 4)));
-                    declaration.getQ11Table().add(cp);
-                }
+    /**
+     * Position of the template in the rule file
+     */
+    private final int index;
 
-            }
-        }
-    }, Q12(new String[][]{{"第1類", "受薪東主、合夥人或董事職位", "如你在本屆任期內終止擔任任何已登記公司的受薪東主"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    /**
+     * The landmarks of this template only, and their indexes in it for each set of landmarks recognizing it
+     */
+    private final LandmarkAutomaton ownLandmarks;
+    private final int[][] ownLandmarkIds;
 
-            Pattern allText = Pattern.compile("公司名稱(.*?)如有需要，請影印本頁", Pattern.DOTALL);
-            Matcher m = allText.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                declaration.setQ12FreeText(Strings.nullToEmpty(declaration.getQ12FreeText()) + removeNonWord(m.group(1)));
-            }
-        }
-    }, Q21_1(new String[][]{{"第2類", "受薪工作及職位等", "你有否從事受薪的工作，包括所有獲得薪金"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    /**
+     * The landmarks of all the patterns of the rules, or null if no rule has a pattern
+     */
+    private final LandmarkAutomaton fieldLandmarks;
 
-            Pattern ynQuestion = Pattern.compile("區會議員一職除外(.*?)請在合適空格內劃", Pattern.DOTALL);
-            Matcher m = ynQuestion.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                String answer = StringUtils.removeAll(m.group(1), " ");
-                if (answer.contains("有" + TICK)) {
-                    declaration.setQ21Yn(true);
-                } else if (answer.contains("否" + TICK)) {
-                    declaration.setQ21Yn(false);
-                }
-            }
-            try {
-                PDFTableStripper stpr = new PDFTableStripper("受薪工作、職位、行業或專業的名稱", "公司的業務性質", "若你有更多受薪的工作");
-                stpr.setSortByPosition(true);
-                stpr.setRegion(new Rectangle(30, 392, 536, 300));
-                stpr.extractTable(content.getRight().getPage(0));
-                declaration.getQ21Table().addAll(stpr.getCellText());
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
-            }
-        }
-    }, Q21_2(new String[][]{{"第2類", "受薪工作及職位等", "續上頁", "如有需要，請影印本頁並在每頁簽署"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    private final List<Rule> rules = new ArrayList<>();
+
+    PageParser(TemplateRules.Template template, int index) {
 
+        if (StringUtils.isBlank(template.getName())) {
+            throw new IllegalArgumentException("Template " + index + " has no name");
+        }
+        if (template.getContaining().isEmpty()) {
+            throw new IllegalArgumentException("Template " + template.getName() + " has no landmark");
+        }
+        this.name = template.getName();
+        this.index = index;
+        List<String> landmarks = new ArrayList<>();
+        this.ownLandmarkIds = landmarkIds(template.getContaining(), landmarks, new HashMap<>());
+        this.ownLandmarks = new LandmarkAutomaton(landmarks, "\n\r ");
+
+        List<String> fieldLandmarkList = new ArrayList<>();
+        Map<String, Integer> fieldLandmarkIds = new HashMap<>();
+        for (TemplateRules.Field field : template.getFields()) {
             try {
-                PDFTableStripper stpr = new PDFTableStripper("受薪工作、職位、行業或專業的名稱", "公司的業務性質", "如有需要，請影印本頁並在每頁簽署");
-                stpr.setSortByPosition(true);
-                stpr.setRegion(new Rectangle(26, 51, 549, 706));
-                stpr.extractTable(content.getRight().getPage(0));
-                declaration.getQ21Table().addAll(stpr.getCellText());
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
+                rules.add(compile(field, fieldLandmarkList, fieldLandmarkIds));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Template " + name + ", field " + rules.size() + ": " + e.getMessage(), e);
             }
         }
-    }, Q22(new String[][]{{"第2類", "受薪工作及職位等", "如你在本屆任期內終止從事任何已登記的受薪工作"}, {"如你在本屆任期內終止從事任何已登記的受薪工作、職位、行業或專業，請在下表列出詳細資料。"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+        this.fieldLandmarks = fieldLandmarkList.isEmpty() ? null : new LandmarkAutomaton(fieldLandmarkList, "");
+    }
 
-            Pattern allText = Pattern.compile("受薪工作、職位、行業或專業的名稱(.*?)如有需要，請影印本頁", Pattern.DOTALL);
-            Matcher m = allText.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                declaration.setQ22FreeText(Strings.nullToEmpty(declaration.getQ22FreeText()) + removeNonWord(m.group(1)));
-            }
+    public String getName() {
+
+        return name;
+    }
+
+    public int getIndex() {
+
+        return index;
+    }
+
+    @Override
+    public String toString() {
+
+        return name;
+    }
+
+    /**
+     * Apply the rules of the template to a page it recognizes.
+     */
+    public void parse(PageContext content, Declaration declaration) {
+
+        LandmarkAutomaton.Occurrences occurrences = null == fieldLandmarks ? null : fieldLandmarks.locate(content.getText());
+        for (Rule rule : rules) {
+            rule.apply(content, occurrences, declaration);
         }
-    }, Q31(new String[][]{{"第3類", "股份", "有否持有任何在香港註冊登記的公司或其他團體的"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    }
 
-            Pattern ynQuestion = Pattern.compile("股份總數的百分之一(.*?)請在合適空格內劃", Pattern.DOTALL);
-            Matcher m = ynQuestion.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                String answer = StringUtils.removeAll(m.group(1), " ");
-                if (answer.contains("有" + TICK)) {
-                    declaration.setQ31SharesYn(true);
-                } else if (answer.contains("否" + TICK)) {
-                    declaration.setQ31SharesYn(false);
+    /**
+     * @return Whether the page has the landmarks of this template, whatever the other templates.
+     */
+    public boolean recognize(PageContext content) {
+
+        return matches(ownLandmarks.scan(content.getRawText()), ownLandmarkIds);
+    }
+
+    /**
+     * @param found The indexes of the landmarks found on a page.
+     * @param ids   The indexes of the landmarks of each set of a template.
+     * @return True if all the landmarks of one of the sets are found.
+     */
+    static boolean matches(BitSet found, int[][] ids) {
+
+        for (int[] c : ids) {
+            boolean matched = true;
+            for (int id : c) {
+                if (!found.get(id)) {
+                    matched = false;
+                    break;
                 }
             }
-            try {
-                PDFTableStripper stpr = new PDFTableStripper("公司名稱", "公司業務性質", "若你有更多股份須登記");
-                stpr.setSortByPosition(true);
-                stpr.setRegion(new Rectangle(19, 373, 557, 323));
-                stpr.extractTable(content.getRight().getPage(0));
-                declaration.getQ31Table().addAll(stpr.getCellText());
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
+            if (matched) {
+                return true;
             }
         }
-    }, Q31_2(new String[][]{{"第3類", "股份", "續上頁", "如有需要，請影印本頁並在每頁簽署"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+        return false;
+    }
 
-            try {
-                PDFTableStripper stpr = new PDFTableStripper("公司名稱", "公司業務性質", "如有需要，請影印本頁並在每頁簽署");
-                stpr.setSortByPosition(true);
-                stpr.setRegion(new Rectangle(26, 51, 549, 706));
-                stpr.extractTable(content.getRight().getPage(0));
-                declaration.getQ31Table().addAll(stpr.getCellText());
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
-            }
+    /**
+     * Give an index to each new landmark of the sets.
+     *
+     * @return The indexes of the landmarks of each set.
+     */
+    static int[][] landmarkIds(List<List<String>> sets, List<String> landmarks, Map<String, Integer> ids) {
+
+        int[][] result = new int[sets.size()][];
+        for (int i = 0; i < sets.size(); i++) {
+            result[i] = landmarkIdsOf(sets.get(i), landmarks, ids);
         }
-    }, Q32(new String[][]{{"第3類", "股份", "如你在本屆任期內終止擁有或持有任何已登記公司或團體的股份"}, {"如你在本屆任期內終止擁有或持有任何已登記公司或團體的股份，請在下表列出詳細資料。"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+        return result;
+    }
 
-            Pattern allText = Pattern.compile("公司名稱(.*?)如有需要，請影印本頁", Pattern.DOTALL);
-            Matcher m = allText.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                declaration.setQ32FreeText(Strings.nullToEmpty(declaration.getQ32FreeText()) + removeNonWord(m.group(1)));
-            }
+    private static int[] landmarkIdsOf(List<String> set, List<String> landmarks, Map<String, Integer> ids) {
+
+        if (set.isEmpty() || set.stream().anyMatch(StringUtils::isEmpty)) {
+            throw new IllegalArgumentException("Empty landmark in " + set);
         }
-    }, Q4(new String[][]{{"第4類", "財政贊助", "來自任何人士或組織的財政贊助"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+        return set.stream().mapToInt(s -> ids.computeIfAbsent(s, k -> {
+            landmarks.add(k);
+            return landmarks.size() - 1;
+        })).toArray();
+    }
 
-            Pattern ynQuestion = Pattern.compile("其配偶的實惠或實利(.*?)請在合適空格內劃", Pattern.DOTALL);
-            Matcher m = ynQuestion.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                String answer = StringUtils.removeAll(m.group(1), " ");
-                if (answer.contains("有" + TICK)) {
-                    declaration.setQ4Yn(true);
-                } else if (answer.contains("否" + TICK)) {
-                    declaration.setQ4Yn(false);
-                }
-            }
-            Pattern allText = Pattern.compile("若有的話，請列明詳情。(.*?)簽署", Pattern.DOTALL);
-            Matcher m1 = allText.matcher(removeLineBreak(content.getLeft()));
-            if (m1.find()) {
-                declaration.setQ4FreeText(Strings.nullToEmpty(declaration.getQ4FreeText()) + removeNonWord(m1.group(1)));
-            }
+    private interface Rule {
+        void apply(PageContext content, LandmarkAutomaton.Occurrences occurrences, Declaration declaration);
+    }
+
+    private static Rule compile(TemplateRules.Field field, List<String> landmarks, Map<String, Integer> ids) {
+
+        if (null == field.getType()) {
+            throw new IllegalArgumentException("No type");
+        }
+        if (field.getType() == TemplateRules.Type.TABLE) {
+            return table(field);
+        }
+        if (null == field.getPattern()) {
+            throw new IllegalArgumentException("No pattern");
         }
-    }, Q5(new String[][]{{"第5類", "海外訪問", "旅遊的費用並非全數由該議員"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+        LandmarkExtractor extractor = new LandmarkExtractor(field.getPattern());
+        int[] patternIds = landmarkIdsOf(Arrays.asList(extractor.getLandmarks()), landmarks, ids);
+        switch (field.getType()) {
+            case YES_NO:
+                return yesNo(field, extractor, patternIds);
+            case TEXT:
+                return text(field, extractor, patternIds);
+            case COMPANY_POSITIONS:
+                return companyPositions(field, extractor, patternIds);
+            default:
+                throw new IllegalArgumentException("Unknown type " + field.getType());
+        }
+    }
+
+    private static Rule yesNo(TemplateRules.Field field, LandmarkExtractor extractor, int[] ids) {
 
-            Pattern ynQuestion = Pattern.compile("其配偶的實惠或實利(.*?)請在合適空格內劃", Pattern.DOTALL);
-            Matcher m = ynQuestion.matcher(removeLineBreak(content.getLeft()));
+        groups(extractor, 1);
+        Method setter = setter(field.getField(), Boolean.class);
+        return (content, occurrences, declaration) -> {
+            LandmarkExtractor.Match m = extractor.match(content.getText(), occurrences, ids);
             if (m.find()) {
-                String answer = StringUtils.removeAll(m.group(1), " ");
+                String answer = StringUtils.remove(m.group(1), ' ');
                 if (answer.contains("有" + TICK)) {
-                    declaration.setQ5Yn(true);
+                    invoke(setter, declaration, true);
                 } else if (answer.contains("否" + TICK)) {
-                    declaration.setQ5Yn(false);
+                    invoke(setter, declaration, false);
                 }
             }
-            Pattern allText = Pattern.compile("詳細資料.*?贊助人姓名(.*?)訪問日期(.*?)訪問的國家.*?地方(.*?)訪問目的(.*?)參加訪問的理由(.*?)收受利益的性質.*?或膳宿津貼有關(.*?)簽署",
-                                              Pattern.DOTALL);
-            Matcher m1 = allText.matcher(removeLineBreak(content.getLeft()));
-            if (m1.find()) {
-                declaration.setQ5SponsorName(removeNonWord(m1.group(1)));
-                declaration.setQ5Date(removeNonWord(m1.group(2)));
-                declaration.setQ5Region(removeNonWord(m1.group(3)));
-                declaration.setQ5Purpose(removeNonWord(m1.group(4)));
-                declaration.setQ5Reason(removeNonWord(m1.group(5)));
-                declaration.setQ5Benefit(removeNonWord(m1.group(6)));
-            }
-        }
-    }, Q6(new String[][]{{"第6類", "土地及物業", "你在香港是否直接或間接地擁有土地或物業"}, {"你在香港是否直接或間接地擁有土地或物業", "議員/委員會成員只須登記所擁有的土地或物業的一般性質"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+        };
+    }
 
-            Pattern ynQuestion = Pattern.compile("直接或間接地擁有土地或物業(.*?)請在合適空格內劃", Pattern.DOTALL);
-            Matcher m = ynQuestion.matcher(removeLineBreak(content.getLeft()));
+    private static Rule text(TemplateRules.Field field, LandmarkExtractor extractor, int[] ids) {
+
+        List<String> fields = null != field.getFields() ? field.getFields() : Collections.singletonList(field.getField());
+        groups(extractor, fields.size());
+        Method[] getters = new Method[fields.size()];
+        Method[] setters = new Method[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            getters[i] = getter(fields.get(i), String.class);
+            setters[i] = setter(fields.get(i), String.class);
+        }
+        boolean append = field.isAppend();
+        return (content, occurrences, declaration) -> {
+            LandmarkExtractor.Match m = extractor.match(content.getText(), occurrences, ids);
             if (m.find()) {
-                String answer = StringUtils.removeAll(m.group(1), " ");
-                if (answer.contains("有" + TICK)) {
-                    declaration.setQ6Yn(true);
-                } else if (answer.contains("否" + TICK)) {
-                    declaration.setQ6Yn(false);
+                for (int i = 0; i < setters.length; i++) {
+                    String value = removeNonWord(m.group(i + 1));
+                    if (append) {
+                        value = Strings.nullToEmpty((String) invoke(getters[i], declaration)) + value;
+                    }
+                    invoke(setters[i], declaration, value);
                 }
             }
-            Pattern allText = Pattern.compile("無需予以登記。(.*?)簽署", Pattern.DOTALL);
-            Matcher m1 = allText.matcher(removeLineBreak(content.getLeft()));
-            if (m1.find()) {
-                declaration.setQ6FreeText(Strings.nullToEmpty(declaration.getQ6FreeText()) + removeNonWord(m1.group(1)));
-            }
-        }
-    }, Q71_1(new String[][]{{"第7類", "客戶", "委員會成員身分或以任何方式與該身分有關而向客戶"}, {"委員會成員身分或以任何方式與該身分有關而向客戶", "並因此收受該客戶付予的薪金、酬金、津貼或其他實惠"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+        };
+    }
 
-            Pattern ynQuestion = Pattern.compile("薪金、酬金、津貼或其他實惠(.*?)請在合適空格內劃", Pattern.DOTALL);
-            Matcher m = ynQuestion.matcher(removeLineBreak(content.getLeft()));
+    private static Rule companyPositions(TemplateRules.Field field, LandmarkExtractor extractor, int[] ids) {
+
+        if (extractor.getGroupCount() == 0 || extractor.getGroupCount() % 4 != 0) {
+            throw new IllegalArgumentException("Pattern has " + extractor.getGroupCount() + " groups, expected 4 per company");
+        }
+        Method getter = getter(field.getField(), List.class);
+        return (content, occurrences, declaration) -> {
+            LandmarkExtractor.Match m = extractor.match(content.getText(), occurrences, ids);
             if (m.find()) {
-                String answer = StringUtils.removeAll(m.group(1), " ");
-                if (answer.contains("有" + TICK)) {
-                    declaration.setQ71Yn(true);
-                } else if (answer.contains("否" + TICK)) {
-                    declaration.setQ71Yn(false);
+                @SuppressWarnings("unchecked")
+                List<Declaration.CompanyPosition> table = (List<Declaration.CompanyPosition>) invoke(getter, declaration);
+                for (int i = 0; i < extractor.getGroupCount() / 4; i++) {
+                    Declaration.CompanyPosition cp = new Declaration.CompanyPosition();
+                    cp.setCompanyName(removeNonWord(m.group(i * 4 + 1)));
+                    if (StringUtils.isBlank(cp.getCompanyName())) {
+                        continue;
+                    }
+                    cp.setNature(removeNonWord(m.group(i * 4 + 2)));
+                    String answer = StringUtils.remove(m.group(i * 4 + 3), ' ');
+                    List<String> positions = new ArrayList<>();
+                    if (answer.contains(TICK + "東主")) {
+                        positions.add("東主");
+                    } else if (answer.contains(TICK + "合夥人")) {
+                        positions.add("合夥人");
+                    } else if (answer.contains(TICK + "董事")) {
+                        positions.add("董事");
+                    } else if (answer.contains(TICK + "其他(請註明)")) {
+                        positions.add("其他: " + answer.split("其他\\(請註明\\)")[1]);
+                    }
+                    cp.setPosition(positions);
+                    cp.setHolding(removeNonWord(m.group(i * 4 + 4)));
+                    table.add(cp);
                 }
             }
-            try {
-                PDFTableStripper stpr = new PDFTableStripper("客戶名稱", "客戶業務性質", "若你有更多客戶須登記");
-                stpr.setSortByPosition(true);
-                stpr.setRegion(new Rectangle(32, 528, 522, 200));
-                stpr.extractTable(content.getRight().getPage(0));
-                declaration.getQ71Table().addAll(stpr.getCellText());
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
-            }
-        }
-    }, Q71_2(new String[][]{{"第7類", "客戶", "續上頁", "如有需要，請影印本頁並在每頁簽署"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+        };
+    }
 
+    private static Rule table(TemplateRules.Field field) {
+
+        if (null == field.getLeft() || null == field.getRight() || null == field.getBottom()) {
+            throw new IllegalArgumentException("Table without left, right or bottom text");
+        }
+        if (null == field.getRegion() || field.getRegion().size() != 4) {
+            throw new IllegalArgumentException("Region is not x, y, width and height");
+        }
+        List<Integer> r = field.getRegion();
+        Rectangle region = new Rectangle(r.get(0), r.get(1), r.get(2), r.get(3));
+        Method getter = getter(field.getField(), List.class);
+        return (content, occurrences, declaration) -> {
             try {
-                PDFTableStripper stpr = new PDFTableStripper("客戶名稱", "客戶業務性質", "如有需要，請影印本頁並在每頁簽署");
-                stpr.setSortByPosition(true);
-                stpr.setRegion(new Rectangle(31, 38, 531, 684));
-                stpr.extractTable(content.getRight().getPage(0));
-                declaration.getQ71Table().addAll(stpr.getCellText());
+                @SuppressWarnings("unchecked")
+                List<Pair<String, String>> table = (List<Pair<String, String>>) invoke(getter, declaration);
+                table.addAll(extractTable(content.getPage(), field.getLeft(), field.getRight(), field.getBottom(), region));
             } catch (Exception e) {
                 log.error(e.getMessage(), e);
             }
-        }
-    }, Q72(new String[][]{{"第7類", "客戶", "如你在本屆任期內終止了任何在此類別下的已登記的工作"}, {"如你在本屆任期內終止了任何在此類別下的已登記的工作，請在下表列出詳細資料"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+        };
+    }
 
-            Pattern allText = Pattern.compile("公司名稱(.*?)如有需要，請影印本頁", Pattern.DOTALL);
-            Matcher m = allText.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                declaration.setQ72FreeText(Strings.nullToEmpty(declaration.getQ72FreeText()) + removeNonWord(m.group(1)));
-            }
-        }
-    }, Q8_1(new String[][]{{"第8類", "其他可供申報的利益", "根據登記個人利益須知所述的目的及兩層申報利益制度指引", "並把有關文件退回"}, {"第8類", "其他可供申報的利益", "根據個人利益登記須知所述的目的及兩層申報利益制度指引", "並把有關文件退回"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    private static void groups(LandmarkExtractor extractor, int expected) {
 
-            Pattern allText = Pattern.compile("詳細資料(.*?)簽署", Pattern.DOTALL);
-            Matcher m = allText.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                declaration.setQ8FreeText(Strings.nullToEmpty(declaration.getQ8FreeText()) + removeNonWord(m.group(1)));
-            }
+        if (extractor.getGroupCount() != expected) {
+            throw new IllegalArgumentException("Pattern has " + extractor.getGroupCount() + " groups, expected " + expected);
         }
-    }, Q8_2(new String[][]{{"第8類", "其他可供申報的利益", "續上頁", "如有需要，請影印本頁"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    }
 
-            Pattern allText = Pattern.compile("委員會成員姓名(.*?)如有需要，請影印本頁並", Pattern.DOTALL);
-            Matcher m = allText.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                declaration.setQ8FreeText(Strings.nullToEmpty(declaration.getQ8FreeText()) + removeNonWord(m.group(1)));
-            }
-        }
-    }, Q8_3(new String[][]{{"第8類", "其他", "根據登記個人利益須知所述的目的及兩層申報利益制度指引", "請在下面提供有關詳情"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    private static Method getter(String property, Class<?> type) {
 
-            Pattern allText = Pattern.compile("請在下面提供有關詳情。(.*?)簽署", Pattern.DOTALL);
-            Matcher m = allText.matcher(removeLineBreak(content.getLeft()));
-            if (m.find()) {
-                declaration.setQ8FreeText(Strings.nullToEmpty(declaration.getQ8FreeText()) + removeNonWord(m.group(1)));
-            }
+        Method getter = method(property, "get");
+        if (!type.isAssignableFrom(getter.getReturnType())) {
+            throw new IllegalArgumentException("Field " + property + " is not a " + type.getSimpleName());
         }
-    }, INSTRUCTION_1(new String[][]{{"填寫登記表格之前，請參閱以下個人利益登記須知。"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+        return getter;
+    }
 
-        }
-    }, INSTRUCTION_2(new String[][]{{"委員會成員應遵從登記個人利益的規定，登記必須登記的個人利益應被視為最低的合理規定"}, {"委員會成員有責任提供所需資料及須對其載錄於登記冊的資料負責"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    private static Method setter(String property, Class<?> type) {
 
+        getter(property, type);
+        try {
+            return Declaration.class.getMethod("set" + StringUtils.capitalize(property), type);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No field " + property + " in declarations");
         }
-    }, INSTRUCTION_3(new String[][]{{"公務委員會及管理局成員的利益申報事宜", "兩層申報利益制度指引"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    }
 
-        }
-    }, INSTRUCTION_4(new String[][]{{"在會議上申報利益", "如委員會某成員(包括主席)在委員會正予考慮的任何事項中有任何直接個人或金錢利益"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
+    private static Method method(String property, String prefix) {
 
+        if (StringUtils.isEmpty(property)) {
+            throw new IllegalArgumentException("No field");
         }
-    }, INSTRUCTION_5(new String[][]{{"委員會成員與某機構的友好關係也可能須要申報", "以免客觀的旁觀者認為該成員提出的意見受雙方密切關係所左右"}}) {
-        @Override
-        public void parse(Pair<String, PDDocument> content, Declaration declaration) {
-
+        try {
+            return Declaration.class.getMethod(prefix + StringUtils.capitalize(property));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No field " + property + " in declarations");
         }
-    };
-
-    PageParser(String[][] containing) {
-
-        this.containing = containing;
     }
 
+    private static Object invoke(Method method, Declaration declaration, Object... args) {
 
-    private String[][] containing;
-
-    public abstract void parse(Pair<String, PDDocument> content, Declaration declaration);
-
-    public boolean recognize(Pair<String, PDDocument> content) {
-        String trimmed = removeLineBreak(content.getLeft()).replaceAll(" ", "");
-        for (String[] c : containing) {
-            boolean matched = true;
-            for (String s : c) {
-                if (!trimmed.contains(s)) {
-                    matched = false;
-                }
-            }
-            if (matched) {
-                return true;
-            }
+        try {
+            return method.invoke(declaration, args);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
         }
-        return false;
     }
 
-    private static String removeLineBreak(String content) {
+    /**
+     * One table stripper per thread, reset for every table instead of created for every page
+     */
+    private static final ThreadLocal<PDFTableStripper> TABLE_STRIPPER = ThreadLocal.withInitial(() -> {
+        try {
+            PDFTableStripper stripper = new PDFTableStripper("", "", "");
+            stripper.setSortByPosition(true);
+            return stripper;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    });
 
-        return content.replaceAll("\\n", "").replaceAll("\\r", "");
-    }
+    private static List<Pair<String, String>> extractTable(PDPage page, String leftColumnHeader, String rightColumnHeader, String bottomText, Rectangle region) throws IOException {
 
+        PDFTableStripper stpr = TABLE_STRIPPER.get();
+        stpr.reset(leftColumnHeader, rightColumnHeader, bottomText);
+        stpr.setRegion(region);
+        stpr.extractTable(page);
+        return stpr.getCellText();
+    }
 
-    public static final String TICK = "\uf0fc";
+    private static final String LEADING_NON_WORD = " -)";
+    private static final String TRAILING_NON_WORD = " -(";
 
+    /**
+     * Trim spaces, dashes and the parenthesis left by the surrounding landmarks, in linear time.
+     */
     private static String removeNonWord(String content) {
 
-        return content.replaceFirst("^[ \\-\\)]+", "").replaceFirst("[ \\-\\(]+$", "");
+        int start = 0;
+        int end = content.length();
+        while (start < end && LEADING_NON_WORD.indexOf(content.charAt(start)) >= 0) {
+            start++;
+        }
+        while (end > start && TRAILING_NON_WORD.indexOf(content.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return content.substring(start, end);
     }
 }
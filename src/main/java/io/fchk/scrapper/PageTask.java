@@ -0,0 +1,120 @@
+package io.fchk.scrapper;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Extract, classify and parse a range of pages of a declaration, splitting the range across a fork-join pool.
+ * <p>
+ * PDFBox documents must not be shared between threads, so every leaf loads its own copy of the document from the
+ * download and only touches the pages of its range. Each page is parsed into its own {@link Declaration}, which the
+ * caller merges in page order. The extra loads only pay off on cores the parse stage leaves idle, see
+ * {@link PdfUtil#parsePdf(PdfDownload)}.
+ */
+@Slf4j
+public class PageTask extends RecursiveTask<List<PageTask.ParsedPage>> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int PAGES_PER_TASK = Integer.getInteger("scrapper.pagesPerTask", 4);
+
+    private final PdfDownload download;
+    private final Templates templates;
+    private final int from;
+    private final int to;
+
+    /**
+     * @param download  The document.
+     * @param templates The templates of the whole document, so that a reload does not change them halfway.
+     * @param from      Index of the first page, inclusive, zero based.
+     * @param to        Index of the last page, exclusive.
+     */
+    public PageTask(PdfDownload download, Templates templates, int from, int to) {
+
+        this.download = download;
+        this.templates = templates;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected List<ParsedPage> compute() {
+
+        if (to - from <= PAGES_PER_TASK) {
+            try (PDDocument document = PdfUtil.load(download); SharedFontCache ignored = (SharedFontCache) document.getResourceCache()) {
+                return parse(document, templates, from, to);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int mid = (from + to) >>> 1;
+        PageTask left = new PageTask(download, templates, from, mid);
+        left.fork();
+        List<ParsedPage> pages = new ArrayList<>(new PageTask(download, templates, mid, to).compute());
+        pages.addAll(0, left.join());
+        return pages;
+    }
+
+    /**
+     * Parse the pages of a document in the current thread.
+     */
+    public static List<ParsedPage> parse(PDDocument document, Templates templates, int from, int to) throws IOException {
+
+        List<ParsedPage> pages = new ArrayList<>(to - from);
+        int index = from;
+        List<PageContext> contexts;
+        try (Metrics.Sample ignored = Metrics.STRIP.start()) {
+            contexts = new PageTextStripper().getPages(document, from, to);
+        }
+        Metrics.counter("pages").add(contexts.size());
+        for (PageContext page : contexts) {
+            Integer pageNumber;
+            try (Metrics.Sample ignored = Metrics.PAGE_NUMBER.start()) {
+                pageNumber = PdfUtil.getPageNumber(page.getRawText());
+            }
+            pages.add(new ParsedPage(null != pageNumber ? pageNumber : 0, index++, parsePage(pageNumber, page, templates)));
+        }
+        return pages;
+    }
+
+    private static Declaration parsePage(Integer pageNumber, PageContext page, Templates templates) {
+
+        Declaration declaration = new Declaration();
+        PageParser parser;
+        try (Metrics.Sample ignored = Metrics.CLASSIFY.start()) {
+            parser = templates.classify(page);
+        }
+        if (null != parser) {
+            try (Metrics.Sample ignored = Metrics.parse(parser).start()) {
+                parser.parse(page, declaration);
+            }
+            return declaration;
+        }
+        Metrics.counter("unrecognized_pages").increment();
+        log.warn("Unable to find parser for page " + (null != pageNumber ? pageNumber : 0) + " value " + StringUtils.substring(page.getStrippedText(), 0, 300));
+        return declaration;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class ParsedPage {
+        /**
+         * Number printed on the page, or 0 if there is none
+         */
+        private int pageNumber;
+        /**
+         * Position of the page in the document
+         */
+        private int index;
+        private Declaration declaration;
+    }
+}
@@ -0,0 +1,64 @@
+package io.fchk.scrapper;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text stripper that extracts the text of each page of a range in a single pass over the document, instead of
+ * splitting the document into one document per page.
+ * <p>
+ * The text of a page is the same as {@link PDFTextStripper#getText(PDDocument)} of a document holding only that page.
+ */
+public class PageTextStripper extends PDFTextStripper {
+
+    private final StringWriter buffer = new StringWriter();
+    private PageContext[] pages;
+    private int from;
+
+    public PageTextStripper() throws IOException {
+
+    }
+
+    /**
+     * Extract the text of a range of pages.
+     *
+     * @param document The document.
+     * @param from     Index of the first page, inclusive, zero based.
+     * @param to       Index of the last page, exclusive.
+     * @return The text and the page, for each page of the range.
+     */
+    public List<PageContext> getPages(PDDocument document, int from, int to) throws IOException {
+
+        this.from = from;
+        pages = new PageContext[to - from];
+        setStartPage(from + 1);
+        setEndPage(to);
+        writeText(document, buffer);
+
+        List<PageContext> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            // Pages without content are skipped by PDFTextStripper and keep an empty text
+            PageContext page = pages[i - from];
+            result.add(null != page ? page : new PageContext("", document.getPage(i)));
+        }
+        return result;
+    }
+
+    @Override
+    protected void startPage(PDPage page) throws IOException {
+
+        buffer.getBuffer().setLength(0);
+    }
+
+    @Override
+    protected void endPage(PDPage page) throws IOException {
+
+        pages[getCurrentPageNo() - 1 - from] = new PageContext(buffer.toString(), page);
+    }
+}
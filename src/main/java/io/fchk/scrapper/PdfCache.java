@@ -0,0 +1,245 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * On-disk cache of downloaded PDFs.
+ * <p>
+ * Content is stored once per content hash under {@code blobs/}, and each url has an entry under {@code index/} with
+ * the hash and the validators sent by the server. A cached url is revalidated with {@code If-None-Match} and
+ * {@code If-Modified-Since}, so unchanged documents cost a 304 instead of a download. Within a run each url is
+ * fetched at most once, and concurrent requests for the same url share that fetch. A downloaded document is handed
+ * over from memory, the stored copy is only read back for a 304. Content no url points to any more is deleted by
+ * {@link #sweep()}.
+ */
+@Slf4j
+public class PdfCache {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("scrapper.cache", "true"));
+    public static final File DIR = new File(System.getProperty("scrapper.cacheDir", "cache"));
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final FetchClient client;
+    private final File indexDir;
+    private final File blobDir;
+    private final ConcurrentMap<String, CompletableFuture<Entry>> fetched = new ConcurrentHashMap<>();
+
+    /**
+     * When the cache was opened, content stored since may belong to an entry another process is about to write
+     */
+    private final long opened = System.currentTimeMillis();
+
+    public PdfCache(File dir, FetchClient client) {
+
+        this.client = client;
+        this.indexDir = new File(dir, "index");
+        this.blobDir = new File(dir, "blobs");
+        if (!indexDir.mkdirs() && !indexDir.isDirectory() || !blobDir.mkdirs() && !blobDir.isDirectory()) {
+            throw new IllegalStateException("Unable to create cache directory " + dir);
+        }
+    }
+
+    /**
+     * Get the content of the url, from the cache if the server confirms it is still current.
+     */
+    public PdfDownload fetch(String url) throws IOException {
+
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = fetched.putIfAbsent(url, future);
+        if (null == existing) {
+            Pair<Entry, PdfDownload> result;
+            try (Metrics.Sample ignored = Metrics.DOWNLOAD.start()) {
+                result = revalidate(url);
+            } catch (IOException | RuntimeException e) {
+                // Let a later occurrence of the url retry
+                fetched.remove(url, future);
+                future.completeExceptionally(e);
+                throw e;
+            }
+            future.complete(result.getLeft());
+            return result.getRight();
+        }
+        Entry entry;
+        try {
+            entry = existing.join();
+        } catch (CompletionException e) {
+            throw new IOException("Fetch of " + url + " failed", e.getCause());
+        }
+        return PdfDownload.of(blob(entry.getContentHash()));
+    }
+
+    /**
+     * Download the url, bypassing the cache.
+     */
+    public static PdfDownload download(FetchClient client, String url) throws IOException {
+
+        try (Metrics.Sample ignored = Metrics.DOWNLOAD.start()) {
+            return client.get(url, Collections.emptyMap(), response -> {
+                if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+                    throw new FetchClient.StatusException(url, response.getStatus());
+                }
+                return read(response);
+            });
+        }
+    }
+
+    /**
+     * Delete the stored content no entry points to, left behind by the documents that changed. Content stored since the
+     * cache was opened is kept, another process sharing the directory may not have written its entry yet.
+     */
+    public void sweep() throws IOException {
+
+        Set<String> referenced = new HashSet<>();
+        File[] entries = indexDir.listFiles((d, name) -> name.endsWith(".json"));
+        if (null == entries) {
+            throw new IOException("Unable to list " + indexDir);
+        }
+        for (File indexFile : entries) {
+            try {
+                referenced.add(MAPPER.readValue(indexFile, Entry.class).getContentHash());
+            } catch (IOException e) {
+                // Unreadable entries are ignored by fetch too
+                log.warn("Ignoring unreadable cache entry " + indexFile + ": " + e.getMessage());
+            }
+        }
+        File[] blobs = blobDir.listFiles((d, name) -> name.endsWith(".pdf"));
+        if (null == blobs) {
+            throw new IOException("Unable to list " + blobDir);
+        }
+        int deleted = 0;
+        for (File blob : blobs) {
+            String hash = blob.getName().substring(0, blob.getName().length() - ".pdf".length());
+            if (!referenced.contains(hash) && blob.lastModified() < opened && blob.delete()) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            Metrics.counter("cache_blobs_deleted").add(deleted);
+            log.info("Deleted " + deleted + " cached PDFs no url points to");
+        }
+    }
+
+    private Pair<Entry, PdfDownload> revalidate(String url) throws IOException {
+
+        File indexFile = indexFile(url);
+        Entry cached = null;
+        if (indexFile.isFile()) {
+            try {
+                cached = MAPPER.readValue(indexFile, Entry.class);
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable cache entry " + indexFile + ": " + e.getMessage());
+            }
+            if (null != cached && !blob(cached.getContentHash()).isFile()) {
+                cached = null;
+            }
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        if (null != cached) {
+            if (null != cached.getEtag()) {
+                headers.put("If-None-Match", cached.getEtag());
+            }
+            if (null != cached.getLastModified()) {
+                headers.put("If-Modified-Since", cached.getLastModified());
+            }
+        }
+        Entry validated = cached;
+        return client.get(url, headers, response -> store(url, validated, response));
+    }
+
+    private Pair<Entry, PdfDownload> store(String url, Entry cached, FetchClient.Response response) throws IOException {
+
+        int status = response.getStatus();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && null != cached) {
+            Metrics.counter("not_modified").increment();
+            return Pair.of(cached, PdfDownload.of(blob(cached.getContentHash())));
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new FetchClient.StatusException(url, status);
+        }
+
+        Entry entry = new Entry().setUrl(url)
+                                 .setEtag(response.getHeader("ETag"))
+                                 .setLastModified(response.getHeader("Last-Modified"));
+        PdfDownload download = read(response);
+        try {
+            entry.setContentHash(download.hash().toString());
+            File blob = blob(entry.getContentHash());
+            if (!blob.isFile()) {
+                File tmp = File.createTempFile("blob", ".tmp", blobDir);
+                try {
+                    download.copyTo(tmp);
+                    Files.move(tmp.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmp.toPath());
+                }
+            }
+            writeAtomically(indexFile(url), entry);
+        } catch (IOException | RuntimeException e) {
+            download.close();
+            throw e;
+        }
+        return Pair.of(entry, download);
+    }
+
+    private static PdfDownload read(FetchClient.Response response) throws IOException {
+
+        PdfDownload download = PdfDownload.read(response.getBody(), response.getContentLength());
+        Metrics.counter("downloaded").increment();
+        Metrics.counter("downloaded_bytes").add(download.length());
+        return download;
+    }
+
+    private void writeAtomically(File target, Entry entry) throws IOException {
+
+        File tmp = File.createTempFile("index", ".tmp", indexDir);
+        try {
+            MAPPER.writeValue(tmp, entry);
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
+        }
+    }
+
+    private File indexFile(String url) {
+
+        return new File(indexDir, Hashing.sha256().hashString(url, StandardCharsets.UTF_8) + ".json");
+    }
+
+    private File blob(String contentHash) {
+
+        return new File(blobDir, contentHash + ".pdf");
+    }
+
+    @Data
+    @Accessors(chain = true)
+    public static class Entry {
+        private String url;
+        private String etag;
+        private String lastModified;
+        private String contentHash;
+    }
+}
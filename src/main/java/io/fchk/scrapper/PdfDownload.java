@@ -0,0 +1,145 @@
+package io.fchk.scrapper;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.RandomAccessBuffer;
+import org.apache.pdfbox.io.RandomAccessBufferedFileInputStream;
+import org.apache.pdfbox.io.RandomAccessRead;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The content of a downloaded PDF.
+ * <p>
+ * Content up to {@link #SPILL_THRESHOLD} bytes is kept on the heap and handed to PDFBox as is. Larger content is
+ * spilled to a temp file owned by this download, which is deleted on {@link #close()}. A download can also be backed by
+ * a file it does not own, such as an entry of {@link PdfCache}, which is left in place.
+ */
+@Slf4j
+public class PdfDownload implements Closeable {
+
+    public static final int SPILL_THRESHOLD = Integer.getInteger("scrapper.spillThreshold", 16 * 1024 * 1024);
+
+    private final byte[] bytes;
+    private final File file;
+    private final boolean temporary;
+
+    private PdfDownload(byte[] bytes, File file, boolean temporary) {
+
+        this.bytes = bytes;
+        this.file = file;
+        this.temporary = temporary;
+    }
+
+    /**
+     * Use the content of an existing file, which is read on the heap when small enough and never deleted.
+     */
+    public static PdfDownload of(File file) throws IOException {
+
+        if (file.length() <= SPILL_THRESHOLD) {
+            return new PdfDownload(Files.toByteArray(file), null, false);
+        }
+        return new PdfDownload(null, file, false);
+    }
+
+    /**
+     * Read the content of a stream.
+     *
+     * @param in             The stream, not closed by this method.
+     * @param expectedLength The length announced by the server, or -1 if unknown.
+     */
+    public static PdfDownload read(InputStream in, long expectedLength) throws IOException {
+
+        if (expectedLength > SPILL_THRESHOLD) {
+            return spill(new byte[0], 0, in);
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(expectedLength > 0 ? (int) expectedLength : 64 * 1024);
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, n);
+            if (buffer.size() > SPILL_THRESHOLD) {
+                return spill(buffer.toByteArray(), buffer.size(), in);
+            }
+        }
+        return new PdfDownload(buffer.toByteArray(), null, false);
+    }
+
+    private static PdfDownload spill(byte[] head, int length, InputStream rest) throws IOException {
+
+        File file = File.createTempFile("declaration", ".pdf");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(head, 0, length);
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = rest.read(chunk)) != -1) {
+                out.write(chunk, 0, n);
+            }
+        } catch (IOException e) {
+            delete(file);
+            throw e;
+        }
+        return new PdfDownload(null, file, true);
+    }
+
+    /**
+     * Open a new reader over the content. Each reader has its own position, so several can be used at once.
+     */
+    public RandomAccessRead open() throws IOException {
+
+        if (null != bytes) {
+            return new RandomAccessBuffer(bytes);
+        }
+        return new RandomAccessBufferedFileInputStream(file);
+    }
+
+    public long length() {
+
+        return null != bytes ? bytes.length : file.length();
+    }
+
+    public boolean isSpilled() {
+
+        return null != file;
+    }
+
+    public HashCode hash() throws IOException {
+
+        if (null != bytes) {
+            return Hashing.sha256().hashBytes(bytes);
+        }
+        return Files.asByteSource(file).hash(Hashing.sha256());
+    }
+
+    public void copyTo(File target) throws IOException {
+
+        if (null != bytes) {
+            Files.write(bytes, target);
+        } else {
+            Files.copy(file, target);
+        }
+    }
+
+    @Override
+    public void close() {
+
+        if (temporary) {
+            delete(file);
+        }
+    }
+
+    private static void delete(File file) {
+
+        if (!file.delete()) {
+            log.warn("Unable to delete " + file);
+        }
+    }
+}
@@ -1,30 +1,34 @@
 package io.fchk.scrapper;
 
 import ch.qos.logback.classic.Level;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.collect.ArrayListMultimap;
+import com.google.common.base.Throwables;
+import com.sun.net.httpserver.HttpServer;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.pdfbox.cos.COSDocument;
-import org.apache.pdfbox.io.RandomAccessFile;
-import org.apache.pdfbox.multipdf.Splitter;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.ScratchFile;
 import org.apache.pdfbox.pdfparser.PDFParser;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.net.URL;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,93 +40,294 @@ public class PdfUtil {
                            "org.apache.commons.logging.impl.NoOpLog");
     }
 
+    private static final Pattern PAGE_NUMBER = Pattern.compile("-\\s*(\\d+)\\s*-", Pattern.DOTALL);
+
+    /**
+     * Shared heap budget for the stream data of open documents, only when {@code scrapper.memoryBudget} is set
+     */
+    private static final MemoryBudget memoryBudget = null != Long.getLong("scrapper.memoryBudget") ? new MemoryBudget(Long.getLong("scrapper.memoryBudget")) : null;
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    static final int PARSE_THREADS = Integer.getInteger("scrapper.parseThreads", CORES);
+
+    /**
+     * Threads parsing the pages of large documents besides the parse stage, by default the cores the parse stage leaves
+     * idle. With a parse thread per core, documents are already parsed in parallel with each other, and splitting them
+     * only adds loads of the same document, so their pages are parsed in one go.
+     */
+    private static final int PAGE_PARALLELISM = Integer.getInteger("scrapper.pageParallelism", Math.max(0, CORES - PARSE_THREADS));
+
+    private static final ForkJoinPool pagePool = PAGE_PARALLELISM > 0 ? new ForkJoinPool(PAGE_PARALLELISM) : null;
+
     public static void main(String[] args) throws Exception {
 
         ((ch.qos.logback.classic.LoggerContext) LoggerFactory.getILoggerFactory()).getLogger("org.apache").setLevel(Level.OFF);
-        Workbook workbook = WorkbookFactory.create(new File("out.xlsx"));
-        Iterator<Sheet> sheetIterator = workbook.sheetIterator();
-        Map<String, Declaration> declarations = new HashMap<>();
-        while (sheetIterator.hasNext()) {
-
-            Sheet sheet = sheetIterator.next();
-            String region = sheet.getSheetName();
-            for (Row row : sheet) {
-                if(row.getCell(3).getStringCellValue().contains("文字版本")) {
-                    String name = row.getCell(1).getStringCellValue();
-                    String url = row.getCell(4).getStringCellValue();
+        DeclarationWriter.Format format = DeclarationWriter.Format.valueOf(System.getProperty("scrapper.format", "json").toUpperCase());
+        File input = new File(System.getProperty("scrapper.input", "out.xlsx"));
+        File journalFile = new File(System.getProperty("scrapper.journal", "out.journal"));
+        File outputFile = new File(System.getProperty("scrapper.output", "out.json"));
+        File previousOutput = new File(System.getProperty("scrapper.previous", "out.previous.json"));
+        File deltaFile = new File(System.getProperty("scrapper.delta", "out.delta.ndjson"));
+        Integer metricsPort = Integer.getInteger("scrapper.metricsPort");
+        HttpServer metricsServer = null != metricsPort ? Metrics.serve(metricsPort) : null;
+        try {
+            if (null != memoryBudget) {
+                log.info("Memory budget of " + (memoryBudget.getTotal() >> 20) + " MB, up to " + (MemoryBudget.DOCUMENT_LIMIT >> 20) + " MB per document");
+            }
+            if (ShardedRun.SHARDS > 0) {
+                new ShardedRun(input, outputFile, format, previousOutput, deltaFile).run();
+                return;
+            }
+            if (!journalFile.isFile() && outputFile.isFile()) {
+                // The output of the last completed run, which the delta of this run is against. When resuming, the
+                // output is partial and the previous output is still the one kept when the interrupted run started
+                Files.move(outputFile.toPath(), previousOutput.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (CheckpointJournal journal = new CheckpointJournal(journalFile);
+                 DeltaWriter delta = new DeltaWriter(previousOutput, deltaFile);
+                 DeclarationWriter writer = new DeclarationWriter(outputFile, format)) {
+                scrape(input, url -> true, () -> false, journal, writer, delta);
+                delta.finish();
+            }
+        } finally {
+            log.info("Metrics\n" + Metrics.summary());
+            if (null != metricsServer) {
+                metricsServer.stop(0);
+            }
+        }
+        // Completed, the next run starts from scratch
+        Files.deleteIfExists(journalFile.toPath());
+
+    }
+
+    /**
+     * Download and parse the urls of the input workbook, writing each declaration as soon as it is parsed.
+     * <p>
+     * Each url goes through three stages with threads of their own: the download, on the many threads of the
+     * {@link FetchScheduler}, then the load, strip, classification and parse, CPU bound, on one thread per core, then the
+     * output, on a single thread. The stages are connected by bounded queues, and a stage blocks when the queue of the
+     * next one is full. The downloads held in memory are thus at most the {@code scrapper.concurrency} in flight, the
+     * {@code scrapper.stageQueue} waiting for a parse thread and one per parse thread, while the downloads in flight
+     * keep the parse threads busy.
+     *
+     * @param accept    Filter of the urls to process, the others are ignored.
+     * @param abandoned Whether to give up the urls not written yet, checked before each stage of a url. The urls given
+     *                  up are neither written nor journaled.
+     * @param journal   The journal of the run, the urls it holds as completed are written from it instead.
+     * @param delta     Where the changes are written, or null.
+     */
+    static void scrape(File input, Predicate<String> accept, BooleanSupplier abandoned, CheckpointJournal journal, DeclarationWriter writer, DeltaWriter delta) throws IOException, InterruptedException {
+
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        RowOutput rows = new RowOutput(writer, delta);
+        FetchClient client = new FetchClient();
+        PdfCache cache = PdfCache.ENABLED ? new PdfCache(PdfCache.DIR, client) : null;
+        int queueCapacity = Integer.getInteger("scrapper.stageQueue", 2 * PARSE_THREADS);
+        int concurrency = Integer.getInteger("scrapper.concurrency", 16);
+        int perHost = Integer.getInteger("scrapper.perHost", 8);
+        // Closed in reverse order, each stage after the stages feeding it
+        try (StageExecutor output = new StageExecutor("output", 1, queueCapacity);
+             StageExecutor parse = new StageExecutor("parse", PARSE_THREADS, queueCapacity);
+             FetchScheduler scheduler = Boolean.parseBoolean(System.getProperty("scrapper.adaptiveConcurrency", "true"))
+                                        ? new FetchScheduler(concurrency, perHost, Integer.getInteger("scrapper.perHostMax", concurrency))
+                                        : new FetchScheduler(concurrency, perHost)) {
+            Metrics.gauge("fetch_queued", scheduler::getQueued);
+            Metrics.gauge("fetch_active", scheduler::getActive);
+            Metrics.gauge("fetch_limit", scheduler::getLimit);
+            if (journal.getCompletedCount() > 0) {
+                log.info("Resuming, " + journal.getCompletedCount() + " urls completed by the previous run");
+            }
+            WorkbookReader.read(input, (region, name, url) -> {
+                if (!accept.test(url) || abandoned.getAsBoolean()) {
+                    return;
+                }
+                if (!rows.add(url, name, region)) {
+                    return;
+                }
+                Declaration completed = journal.takeCompleted(url);
+                if (null != completed) {
+                    Metrics.counter("resumed_documents").increment();
+                    rows.write(url, completed);
+                    return;
+                }
+                AtomicReference<Metrics.Sample> document = new AtomicReference<>();
+                tasks.add(scheduler.submit(url, () -> {
+                    if (abandoned.getAsBoolean()) {
+                        throw new CancellationException("Abandoned");
+                    }
                     log.info(url);
-                    try {
-                        Declaration declaration = parsePdf(url);
-                        declaration.setPersonName(name);
-                        declaration.setRegion(region);
-                        if (null != declaration) {
-                            declarations.put(url, declaration);
+                    document.set(Metrics.DOCUMENT.start());
+                    return null != cache ? cache.fetch(url) : PdfCache.download(client, url);
+                }).thenApplyAsync(download -> {
+                    try (PdfDownload ignored = download) {
+                        if (abandoned.getAsBoolean()) {
+                            throw new CancellationException("Abandoned");
                         }
+                        return parsePdf(download);
                     } catch (Exception e) {
-                        log.error(e.getMessage(), e);
+                        throw new CompletionException(e);
                     }
-                }
+                }, parse).handleAsync((declaration, error) -> {
+                    try (Metrics.Sample ignored = document.get()) {
+                        if (abandoned.getAsBoolean()) {
+                            return null;
+                        }
+                        if (null != error) {
+                            Throwable cause = error instanceof CompletionException && null != error.getCause() ? error.getCause() : error;
+                            Throwables.throwIfUnchecked(cause);
+                            throw (Exception) cause;
+                        }
+                        try (Metrics.Sample written = Metrics.OUTPUT.start()) {
+                            rows.write(url, declaration);
+                            journal.recordSuccess(url, declaration);
+                        }
+                        Metrics.counter("documents").increment();
+                    } catch (Exception e) {
+                        Metrics.counter("failed_documents").increment();
+                        if (null != delta) {
+                            delta.skip(url);
+                        }
+                        log.error(url + ": " + e.getMessage(), e);
+                        try {
+                            journal.recordFailure(url, e);
+                        } catch (IOException io) {
+                            throw new UncheckedIOException(io);
+                        }
+                    }
+                    return null;
+                }, output));
+            });
+            rows.finishRows();
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        }
+        if (null != cache) {
+            cache.sweep();
+        }
+    }
+
+    /**
+     * Writes each declaration with the name and region of the last row listing its url.
+     * <p>
+     * A url listed twice takes the values of its last row, which is only known once the whole workbook is read, so the
+     * declarations completed before that are held and written when the last row is read.
+     */
+    static class RowOutput {
+
+        private final DeclarationWriter writer;
+        private final DeltaWriter delta;
+        private final Map<String, Pair<String, String>> rows = new HashMap<>();
+
+        /**
+         * Declarations waiting for the end of the workbook, null once it is read
+         */
+        private List<Pair<String, Declaration>> held = new ArrayList<>();
+
+        RowOutput(DeclarationWriter writer, DeltaWriter delta) {
 
+            this.writer = writer;
+            this.delta = delta;
+        }
+
+        /**
+         * Record the name and region of a row.
+         *
+         * @return True if the url is listed for the first time.
+         */
+        synchronized boolean add(String url, String name, String region) {
+
+            return null == rows.put(url, Pair.of(name, region));
+        }
+
+        synchronized void write(String url, Declaration declaration) throws IOException {
+
+            if (null != held) {
+                held.add(Pair.of(url, declaration));
+                return;
+            }
+            Pair<String, String> row = rows.get(url);
+            declaration.setPersonName(row.getLeft());
+            declaration.setRegion(row.getRight());
+            writer.write(url, declaration);
+            if (null != delta) {
+                delta.write(url, declaration);
             }
         }
-        new ObjectMapper().writeValue(new File("out.json"), declarations);
 
+        /**
+         * Write the declarations held until now, and the next ones as they come.
+         */
+        synchronized void finishRows() throws IOException {
+
+            List<Pair<String, Declaration>> completed = held;
+            held = null;
+            for (Pair<String, Declaration> p : completed) {
+                write(p.getLeft(), p.getRight());
+            }
+        }
     }
 
-    private static Declaration parsePdf(String url) throws Exception {
-
-        SSLUtilities.trustAllHostnames();
-        SSLUtilities.trustAllHttpsCertificates();
-        File pdfOut = new File("out.pdf");
-        FileUtils.copyURLToFile(new URL(url), pdfOut);
-        PDFParser parser = new PDFParser(new RandomAccessFile(pdfOut, "r"));
-        parser.parse();
-
-        PDFTextStripper pdfStripper = new PDFTextStripper();
-        Declaration declaration;
-        try(COSDocument cosDoc = parser.getDocument();
-            PDDocument pdDoc = new PDDocument(cosDoc)){
-            Splitter splitter = new Splitter();
-            List<PDDocument> documentPages = splitter.split(pdDoc);
-            ArrayListMultimap<Integer, Pair<String, PDDocument>> pages = ArrayListMultimap.create();
-            for (PDDocument p : documentPages) {
-                String parsedText = pdfStripper.getText(p);
-                Integer pageNumber = getPageNumber(parsedText);
-                if (null != pageNumber) {
-                    pages.put(pageNumber, Pair.of(parsedText, p));
-                }else{
-                    pages.put(0, Pair.of(parsedText, p));
-                }
+    static Declaration parsePdf(PdfDownload download) throws Exception {
+
+        // Read once, a reload while the document is parsed must not give its pages different templates
+        Templates templates = Templates.current();
+        try (PDDocument pdDoc = load(download); SharedFontCache ignored = (SharedFontCache) pdDoc.getResourceCache()) {
+            int pageCount = pdDoc.getNumberOfPages();
+            if (null == pagePool || pageCount <= PageTask.PAGES_PER_TASK) {
+                return mergePages(PageTask.parse(pdDoc, templates, 0, pageCount));
             }
-            declaration = parsePages(pages);
-            for(PDDocument p: documentPages){
-                p.close();
+            // The first pages are parsed here from the document already loaded, the others by the pool
+            ForkJoinTask<List<PageTask.ParsedPage>> rest = pagePool.submit(new PageTask(download, templates, PageTask.PAGES_PER_TASK, pageCount));
+            List<PageTask.ParsedPage> pages;
+            try {
+                pages = new ArrayList<>(PageTask.parse(pdDoc, templates, 0, PageTask.PAGES_PER_TASK));
+            } catch (IOException | RuntimeException e) {
+                // The pool still reads the download, which the caller closes
+                rest.quietlyJoin();
+                throw e;
             }
+            pages.addAll(rest.join());
+            return mergePages(pages);
         }
-        return declaration;
+    }
 
+    static PDDocument load(PdfDownload download) throws IOException {
 
+        RandomAccessRead source = download.open();
+        ScratchFile scratchFile = null;
+        try (Metrics.Sample ignored = Metrics.LOAD.start()) {
+            PDFParser parser;
+            if (null != memoryBudget) {
+                scratchFile = memoryBudget.scratchFile();
+                parser = new PDFParser(source, scratchFile);
+            } else {
+                parser = new PDFParser(source);
+            }
+            parser.parse();
+            PDDocument document = parser.getPDDocument();
+            document.setResourceCache(new SharedFontCache());
+            return document;
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            if (null != scratchFile) {
+                scratchFile.close();
+            }
+            throw e;
+        }
     }
 
-    private static Declaration parsePages(ArrayListMultimap<Integer, Pair<String, PDDocument>> pages){
+    private static Declaration mergePages(List<PageTask.ParsedPage> pages) {
+
         Declaration declaration = new Declaration();
-        outerLoop:
-        for(Map.Entry<Integer, Pair<String, PDDocument>> entry: pages.entries()){
-            for (PageParser parser: PageParser.values()){
-                if(parser.recognize(entry.getValue())){
-                    parser.parse(entry.getValue(), declaration);
-                    continue outerLoop;
-                }
-            }
-            log.warn("Unable to find parser for page " + entry.getKey() + " value " + StringUtils.substring(entry.getValue().getLeft().replaceAll("(\\n|\\r|\\s)", ""), 0, 300));
-        }
+        pages.stream()
+             .sorted(Comparator.comparingInt(PageTask.ParsedPage::getPageNumber).thenComparingInt(PageTask.ParsedPage::getIndex))
+             .forEach(p -> declaration.merge(p.getDeclaration()));
         return declaration;
     }
 
-    private static Integer getPageNumber(String input) {
+    static Integer getPageNumber(String input) {
 
-        Pattern pageNoPattern = Pattern.compile("-\\s*(\\d+)\\s*-", Pattern.DOTALL);
-        Matcher m = pageNoPattern.matcher(input);
+        Matcher m = PAGE_NUMBER.matcher(input);
         if (m.find()) {
             return Integer.valueOf(m.group(1));
         }
@@ -19,12 +19,14 @@ public final class SSLUtilities {
      *
      * @deprecated see {@link #_hostnameVerifier}.
      */
+    @Deprecated
     private static javax.net.ssl.HostnameVerifier __hostnameVerifier;
     /**
      * Thrust managers for the Sun's deprecated API.
      *
      * @deprecated see {@link #_trustManagers}.
      */
+    @Deprecated
     private static javax.net.ssl.TrustManager[] __trustManagers;
     /**
      * Hostname verifier.
@@ -43,6 +45,7 @@ public final class SSLUtilities {
      *
      * @deprecated see {@link #_trustAllHostnames()}.
      */
+    @Deprecated
     private static void __trustAllHostnames() {
         // Create a trust manager that does not validate certificate chains
         if(__hostnameVerifier == null) {
@@ -60,6 +63,7 @@ public final class SSLUtilities {
      *
      * @deprecated see {@link #_trustAllHttpsCertificates()}.
      */
+    @Deprecated
     private static void __trustAllHttpsCertificates() {
         javax.net.ssl.SSLContext context;
 
@@ -164,6 +168,7 @@ public final class SSLUtilities {
      *
      * @deprecated see {@link SSLUtilities.FakeHostnameVerifier}.
      */
+    @Deprecated
     public static class _FakeHostnameVerifier
             implements javax.net.ssl.HostnameVerifier {
 
@@ -199,6 +204,7 @@ public final class SSLUtilities {
      *
      * @deprecated see {@link SSLUtilities.FakeX509TrustManager}.
      */
+    @Deprecated
     public static class _FakeX509TrustManager
             implements javax.net.ssl.X509TrustManager {
 
@@ -0,0 +1,304 @@
+package io.fchk.scrapper;
+
+import com.google.common.hash.Hashing;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out the shards of a run to the workers sharing a directory, on one machine or on several through a shared file
+ * system.
+ * <p>
+ * The state of the run is the file {@code coordinator.json} in the directory, read and written by the workers while
+ * they hold a lock on {@code coordinator.lock}. A worker claims a shard for a lease, which it renews while it works, and
+ * marks the shard done with its output. A shard whose lease expires, because its worker died, is claimed again by the
+ * next worker looking for work, as a new attempt with files of its own, so a late write of the previous worker does not
+ * corrupt them. Once every shard is done, one more task, the merge, is claimed the same way. The worker creating the
+ * state of the run runs a setup first, holding the lock, so it happens once per run whatever the workers.
+ * <p>
+ * The state belongs to a run, named by the workers. A worker of another run replaces a finished run, deleting its
+ * files, and refuses to join an unfinished one.
+ */
+@Slf4j
+public class ShardCoordinator {
+
+    public static final String DONE = "DONE";
+    public static final String RUNNING = "RUNNING";
+    public static final String PENDING = "PENDING";
+
+    private final File dir;
+    private final String run;
+    private final int shards;
+    private final String worker;
+    private final long leaseMs;
+
+    public interface Setup {
+        void run() throws IOException;
+    }
+
+    /**
+     * @param run   The id of the run, the same for all its workers.
+     * @param setup Run by the worker creating the run, before anything is claimed. It must be safe to run again, a
+     *              worker dying before the state is written leaves the setup to the next one.
+     */
+    public ShardCoordinator(File dir, String run, int shards, String worker, long leaseMs, Setup setup) throws IOException {
+
+        this.dir = dir;
+        this.run = run;
+        this.shards = shards;
+        this.worker = worker;
+        this.leaseMs = leaseMs;
+        Files.createDirectories(dir.toPath());
+        update(state -> {
+            if (!state.getTasks().isEmpty() && !run.equals(state.getRun())) {
+                if (!DONE.equals(state.getTasks().get(state.getTasks().size() - 1).getStatus())) {
+                    throw new IllegalStateException(dir + " holds the unfinished run " + state.getRun() + ", not " + run);
+                }
+                log.info("Replacing the finished run " + state.getRun() + " in " + dir);
+                clear();
+                state.getTasks().clear();
+            }
+            if (state.getTasks().isEmpty()) {
+                setup.run();
+                state.setRun(run);
+                for (int i = 0; i <= shards; i++) {
+                    state.getTasks().add(new Task().setStatus(PENDING));
+                }
+            } else if (state.getTasks().size() != shards + 1) {
+                throw new IllegalStateException(dir + " holds a run of " + (state.getTasks().size() - 1) + " shards, not " + shards);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Delete the files of the tasks of a run.
+     */
+    private void clear() throws IOException {
+
+        File[] files = dir.listFiles((d, name) -> name.startsWith("shard-") || name.startsWith("merge-"));
+        if (null == files) {
+            throw new IOException("Unable to list " + dir);
+        }
+        for (File file : files) {
+            Files.delete(file.toPath());
+        }
+    }
+
+    /**
+     * @return The shard of a url, the same in every JVM.
+     */
+    public static int shardOf(String url, int shards) {
+
+        return Math.floorMod(Hashing.murmur3_32().hashString(url, StandardCharsets.UTF_8).asInt(), shards);
+    }
+
+    /**
+     * Claim the next shard to process, pending or left by a dead worker, or the merge once all shards are done.
+     *
+     * @return The claim, or null if there is nothing to claim for now.
+     */
+    public Claim claim() throws IOException {
+
+        return update(state -> {
+            long now = System.currentTimeMillis();
+            boolean allDone = true;
+            for (int i = 0; i < shards; i++) {
+                Task task = state.getTasks().get(i);
+                if (isClaimable(task, now)) {
+                    return claim(state, i, now);
+                }
+                allDone &= DONE.equals(task.getStatus());
+            }
+            return allDone && isClaimable(state.getTasks().get(shards), now) ? claim(state, shards, now) : null;
+        });
+    }
+
+    private static boolean isClaimable(Task task, long now) {
+
+        return PENDING.equals(task.getStatus()) || RUNNING.equals(task.getStatus()) && task.getExpires() < now;
+    }
+
+    private Claim claim(State state, int index, long now) {
+
+        Task task = state.getTasks().get(index);
+        if (RUNNING.equals(task.getStatus())) {
+            log.warn("Taking over " + name(index) + " from " + task.getWorker() + ", its lease expired");
+            Metrics.counter("shard_takeovers").increment();
+        }
+        task.setStatus(RUNNING).setWorker(worker).setExpires(now + leaseMs).setAttempt(task.getAttempt() + 1);
+        return new Claim(index, task.getAttempt());
+    }
+
+    /**
+     * Extend the lease of a claim.
+     *
+     * @return False if the claim was lost, taken over by another worker after its lease expired.
+     */
+    public boolean renew(Claim claim) throws IOException {
+
+        return update(state -> {
+            Task task = state.getTasks().get(claim.getIndex());
+            if (!isOwner(task, claim)) {
+                return false;
+            }
+            task.setExpires(System.currentTimeMillis() + leaseMs);
+            return true;
+        });
+    }
+
+    /**
+     * Mark the task of a claim done.
+     *
+     * @param output The name of the output of the task in the directory.
+     * @return False if the claim was lost, in which case the task belongs to another worker.
+     */
+    public boolean complete(Claim claim, String output) throws IOException {
+
+        return update(state -> {
+            Task task = state.getTasks().get(claim.getIndex());
+            if (!isOwner(task, claim)) {
+                return false;
+            }
+            task.setStatus(DONE).setOutput(output);
+            return true;
+        });
+    }
+
+    private boolean isOwner(Task task, Claim claim) {
+
+        return RUNNING.equals(task.getStatus()) && worker.equals(task.getWorker()) && task.getAttempt() == claim.getAttempt();
+    }
+
+    /**
+     * @return Whether the merge is done, after which there is nothing left to claim.
+     */
+    public boolean isFinished() throws IOException {
+
+        return update(state -> DONE.equals(state.getTasks().get(shards).getStatus()));
+    }
+
+    /**
+     * @return The claim the merge was completed with, or null if it is not done.
+     */
+    public Claim getMerge() throws IOException {
+
+        return update(state -> {
+            Task task = state.getTasks().get(shards);
+            return DONE.equals(task.getStatus()) ? new Claim(shards, task.getAttempt()) : null;
+        });
+    }
+
+    /**
+     * @return The outputs of the shards, in shard order.
+     */
+    public List<File> getOutputs() throws IOException {
+
+        return update(state -> {
+            List<File> outputs = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                outputs.add(new File(dir, state.getTasks().get(i).getOutput()));
+            }
+            return outputs;
+        });
+    }
+
+    /**
+     * @return A file of the claim, distinct for every attempt.
+     */
+    public File file(Claim claim, String extension) {
+
+        return file(claim.getIndex(), claim.getAttempt(), extension);
+    }
+
+    /**
+     * @return The same file of the previous attempt of the claim.
+     */
+    public File previousFile(Claim claim, String extension) {
+
+        return file(claim.getIndex(), claim.getAttempt() - 1, extension);
+    }
+
+    private File file(int index, int attempt, String extension) {
+
+        return new File(dir, name(index) + "-" + attempt + extension);
+    }
+
+    /**
+     * @return The name of the task of a claim, for the logs.
+     */
+    public String name(Claim claim) {
+
+        return name(claim.getIndex());
+    }
+
+    private String name(int index) {
+
+        return index == shards ? "merge" : "shard-" + index;
+    }
+
+    private interface Update<T> {
+        T apply(State state) throws IOException;
+    }
+
+    /**
+     * Read, change and write the state of the run, holding the lock.
+     */
+    private synchronized <T> T update(Update<T> update) throws IOException {
+
+        File stateFile = new File(dir, "coordinator.json");
+        try (FileChannel channel = FileChannel.open(new File(dir, "coordinator.lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            State state = stateFile.isFile() ? Json.MAPPER.readValue(stateFile, State.class) : new State();
+            String before = Json.MAPPER.writeValueAsString(state);
+            T result = update.apply(state);
+            String after = Json.MAPPER.writeValueAsString(state);
+            if (!after.equals(before)) {
+                File tmp = new File(dir, "coordinator.json.tmp");
+                Files.write(tmp.toPath(), after.getBytes(StandardCharsets.UTF_8));
+                Files.move(tmp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return result;
+        }
+    }
+
+    @Data
+    public static class State {
+        private String run;
+
+        /**
+         * The shards then the merge
+         */
+        private List<Task> tasks = new ArrayList<>();
+    }
+
+    @Data
+    @Accessors(chain = true)
+    public static class Task {
+        private String status;
+        private String worker;
+        private long expires;
+        private int attempt;
+        private String output;
+    }
+
+    @Data
+    public static class Claim {
+        /**
+         * The shard, or the number of shards for the merge
+         */
+        private final int index;
+        private final int attempt;
+    }
+}
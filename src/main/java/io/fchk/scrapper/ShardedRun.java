@@ -0,0 +1,343 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A run split into {@code scrapper.shards} shards by a stable hash of the url, processed by any number of worker JVMs
+ * sharing the directory {@code scrapper.shardDir}, see {@link ShardCoordinator}.
+ * <p>
+ * Each worker reads the whole input and processes the urls of the shard it claimed, writing them to an output and a
+ * journal of the shard in the directory. A worker taking over a shard resumes from the journal of the previous
+ * attempt, and a worker losing its lease gives up the urls it has not written yet. A completed shard output is sorted
+ * by url, along with the urls that failed, holding only the url and position of each line, and the merge streams the
+ * sorted outputs into the output of the run in url order, so the output is the same whatever the workers and the order
+ * they finished in.
+ * <p>
+ * The output of the previous run is copied into the directory once, when the run is created, and the merge writes the
+ * delta against that copy. The merged output and the delta stay in the directory until the merge is marked done, and
+ * are then copied into place by every worker seeing the run finished, so a merge that dies or loses its lease halfway
+ * leaves the output and the previous output as they were. Workers exit once the merge is done.
+ * <p>
+ * The run is named by {@code scrapper.runId}, by default a hash of the input, so a worker started against the
+ * directory of another run, once finished, starts a new run there instead of publishing the old output again. A worker
+ * started with the input of the run already merged in the directory only publishes its output; give it another id to
+ * process the input again.
+ */
+@Slf4j
+public class ShardedRun {
+
+    public static final int SHARDS = Integer.getInteger("scrapper.shards", 0);
+    public static final long LEASE_MS = Long.getLong("scrapper.shardLeaseMs", 120_000L);
+
+    /**
+     * Wait between two claims when every shard left is held by another worker
+     */
+    private static final long POLL_MS = 1_000L;
+
+    private final File input;
+    private final File output;
+    private final DeclarationWriter.Format format;
+    private final File previousOutput;
+    private final File deltaFile;
+    private final String worker;
+
+    /**
+     * Copy of the output of the previous run, taken when the run was created
+     */
+    private final File previousSnapshot;
+    private final ShardCoordinator coordinator;
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("shard-lease").setDaemon(true).build());
+
+    public ShardedRun(File input, File output, DeclarationWriter.Format format, File previousOutput, File deltaFile) throws IOException {
+
+        this.input = input;
+        this.output = output;
+        this.format = format;
+        this.previousOutput = previousOutput;
+        this.deltaFile = deltaFile;
+        this.worker = System.getProperty("scrapper.workerId", InetAddress.getLocalHost().getHostName() + "-" + ManagementFactory.getRuntimeMXBean().getName().split("@")[0]);
+        File dir = new File(System.getProperty("scrapper.shardDir", "shards"));
+        String run = System.getProperty("scrapper.runId", com.google.common.io.Files.asByteSource(input).hash(Hashing.sha256()).toString());
+        this.previousSnapshot = new File(dir, "previous-output");
+        this.coordinator = new ShardCoordinator(dir, run, SHARDS, worker, LEASE_MS, () -> {
+            if (output.isFile()) {
+                copy(output, previousSnapshot);
+            } else {
+                Files.deleteIfExists(previousSnapshot.toPath());
+            }
+        });
+        log.info("Worker " + worker + " of run " + run + " on " + SHARDS + " shards in " + dir);
+    }
+
+    /**
+     * Process shards until the run is merged.
+     */
+    public void run() throws IOException, InterruptedException {
+
+        try {
+            while (!coordinator.isFinished()) {
+                ShardCoordinator.Claim claim = coordinator.claim();
+                if (null == claim) {
+                    Thread.sleep(POLL_MS);
+                    continue;
+                }
+                AtomicBoolean lost = new AtomicBoolean();
+                long period = Math.max(1, LEASE_MS / 4);
+                ScheduledFuture<?> renewal = heartbeat.scheduleAtFixedRate(() -> {
+                    try {
+                        if (!coordinator.renew(claim)) {
+                            lost.set(true);
+                        }
+                    } catch (IOException e) {
+                        log.warn("Unable to renew the lease of shard " + claim.getIndex() + ": " + e.getMessage());
+                    }
+                }, period, period, TimeUnit.MILLISECONDS);
+                try {
+                    File result = claim.getIndex() == SHARDS ? merge(claim, lost::get) : process(claim, lost::get);
+                    if (null == result || lost.get() || !coordinator.complete(claim, result.getName())) {
+                        log.warn("Lost the lease of " + coordinator.name(claim) + " to another worker, abandoning attempt " + claim.getAttempt());
+                    }
+                } finally {
+                    renewal.cancel(false);
+                }
+            }
+        } finally {
+            heartbeat.shutdownNow();
+        }
+        publish();
+        log.info("Run merged into " + output);
+    }
+
+    /**
+     * Copy the merged output, the delta and the previous output into place. Every worker does it once the run is
+     * finished, with the same files, so it is done even if the worker of the merge died right after completing it.
+     */
+    private void publish() throws IOException {
+
+        ShardCoordinator.Claim merge = coordinator.getMerge();
+        if (previousSnapshot.isFile()) {
+            copy(previousSnapshot, previousOutput);
+        }
+        copy(coordinator.file(merge, ".delta.ndjson"), deltaFile);
+        copy(coordinator.file(merge, ".merged"), output);
+    }
+
+    /**
+     * Replace a file with a copy of another, atomically, so that a reader never sees a partial file.
+     */
+    private void copy(File from, File to) throws IOException {
+
+        File tmp = new File(to.getPath() + "." + worker + ".tmp");
+        Files.copy(from.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Process the urls of a shard and sort them, with the urls that failed.
+     *
+     * @param lost Whether the lease was lost, in which case the shard is abandoned.
+     * @return The sorted output, or null if the shard was abandoned.
+     */
+    private File process(ShardCoordinator.Claim claim, BooleanSupplier lost) throws IOException, InterruptedException {
+
+        log.info("Processing shard " + claim.getIndex() + ", attempt " + claim.getAttempt());
+        File journalFile = coordinator.file(claim, ".journal");
+        File previousJournal = coordinator.previousFile(claim, ".journal");
+        if (previousJournal.isFile()) {
+            // A copy, the previous worker may still be appending to its own
+            Files.copy(previousJournal.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        File unsorted = coordinator.file(claim, ".ndjson");
+        Set<String> failed;
+        try (CheckpointJournal journal = new CheckpointJournal(journalFile);
+             DeclarationWriter writer = new DeclarationWriter(unsorted, DeclarationWriter.Format.NDJSON)) {
+            PdfUtil.scrape(input, url -> ShardCoordinator.shardOf(url, SHARDS) == claim.getIndex(), lost, journal, writer, null);
+            failed = journal.getFailed();
+        }
+        if (lost.getAsBoolean()) {
+            return null;
+        }
+        File sorted = coordinator.file(claim, ".sorted.ndjson");
+        sort(unsorted, failed, sorted);
+        return sorted;
+    }
+
+    /**
+     * Sort the lines of a shard output by url, with a line {@code {"url":...,"failed":true}} for each url that failed
+     * and has no line. Only the url and position of each line are held, the lines are copied from the output in url
+     * order.
+     */
+    static void sort(File unsorted, Set<String> failed, File sorted) throws IOException {
+
+        // The line of each url, the last one if there are several
+        Map<String, long[]> lines = new HashMap<>();
+        try (JsonParser p = Json.MAPPER.getFactory().createParser(unsorted)) {
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                long start = p.getTokenLocation().getByteOffset();
+                String url = null;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    if ("url".equals(p.getCurrentName())) {
+                        url = p.nextTextValue();
+                    } else {
+                        p.nextToken();
+                        p.skipChildren();
+                    }
+                }
+                if (null == url) {
+                    throw new IOException("Line without url in " + unsorted + " at " + p.getCurrentLocation());
+                }
+                lines.put(url, new long[]{start, p.getCurrentLocation().getByteOffset()});
+            }
+        }
+        List<String> urls = new ArrayList<>(lines.keySet());
+        for (String url : failed) {
+            if (!lines.containsKey(url)) {
+                urls.add(url);
+            }
+        }
+        Collections.sort(urls);
+        try (RandomAccessFile in = new RandomAccessFile(unsorted, "r");
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(sorted))) {
+            byte[] buffer = new byte[8192];
+            for (String url : urls) {
+                long[] line = lines.get(url);
+                if (null == line) {
+                    out.write(Json.MAPPER.writeValueAsBytes(Json.MAPPER.createObjectNode().put("url", url).put("failed", true)));
+                } else {
+                    in.seek(line[0]);
+                    for (long left = line[1] - line[0]; left > 0; ) {
+                        int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                        if (n < 0) {
+                            throw new EOFException("Line of " + url + " cut short in " + unsorted);
+                        }
+                        out.write(buffer, 0, n);
+                        left -= n;
+                    }
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Merge the sorted outputs of the shards, and write the delta against the output of the previous run, both in the
+     * directory until the merge is marked done.
+     *
+     * @param lost Whether the lease was lost, in which case the merge is abandoned.
+     * @return The merged output, or null if the merge was abandoned.
+     */
+    private File merge(ShardCoordinator.Claim claim, BooleanSupplier lost) throws IOException {
+
+        List<File> outputs = coordinator.getOutputs();
+        log.info("Merging " + outputs.size() + " shards");
+        File merged = coordinator.file(claim, ".merged");
+        return merge(outputs, previousSnapshot, merged, coordinator.file(claim, ".delta.ndjson"), format, lost) ? merged : null;
+    }
+
+    /**
+     * Merge sorted shard outputs into an output in url order, and write the delta against a previous output.
+     *
+     * @return False if the merge was abandoned.
+     */
+    static boolean merge(List<File> outputs, File previousOutput, File merged, File delta, DeclarationWriter.Format format, BooleanSupplier lost) throws IOException {
+
+        List<JsonParser> parsers = new ArrayList<>();
+        PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing((Head h) -> h.url));
+        try (DeltaWriter deltaWriter = new DeltaWriter(previousOutput, delta);
+             DeclarationWriter writer = new DeclarationWriter(merged, format)) {
+            for (File file : outputs) {
+                JsonParser p = Json.MAPPER.getFactory().createParser(file);
+                parsers.add(p);
+                Head head = Head.next(p);
+                if (null != head) {
+                    heads.add(head);
+                }
+            }
+            while (!heads.isEmpty()) {
+                if (lost.getAsBoolean()) {
+                    return false;
+                }
+                Head head = heads.poll();
+                if (null == head.declaration) {
+                    // Failed in this run, still in the input
+                    deltaWriter.skip(head.url);
+                } else {
+                    writer.write(head.url, head.declaration);
+                    deltaWriter.write(head.url, head.declaration);
+                }
+                Head next = Head.next(head.parser);
+                if (null != next) {
+                    heads.add(next);
+                }
+            }
+            deltaWriter.finish();
+        } finally {
+            for (JsonParser p : parsers) {
+                p.close();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The next line of a sorted shard output
+     */
+    private static class Head {
+
+        private final JsonParser parser;
+        private final String url;
+
+        /**
+         * Null for a url that failed
+         */
+        private final Declaration declaration;
+
+        private Head(JsonParser parser, String url, Declaration declaration) {
+
+            this.parser = parser;
+            this.url = url;
+            this.declaration = declaration;
+        }
+
+        static Head next(JsonParser p) throws IOException {
+
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            JsonNode line = p.readValueAsTree();
+            Declaration declaration = line.path("failed").asBoolean() ? null : Json.MAPPER.treeToValue(line.get("declaration"), Declaration.class);
+            return new Head(p, line.get("url").asText(), declaration);
+        }
+    }
+}
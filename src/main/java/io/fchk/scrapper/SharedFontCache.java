@@ -0,0 +1,339 @@
+package io.fchk.scrapper;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.DefaultResourceCache;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resource cache of a document that shares its fonts with the documents loaded before it.
+ * <p>
+ * The declarations are printed from a few forms and embed the same CJK fonts, which PDFBox otherwise inflates and parses
+ * again for every document, and for every chunk of pages of a large document. A font is keyed by a hash of its
+ * dictionary and of the raw bytes of every stream it refers to, the font program and the {@code ToUnicode} map
+ * included, so fonts are only shared when they are the same, subset and encoding alike. Type 3 fonts, which draw their
+ * glyphs from content streams of their document, are not shared. The bytes of the streams are only read for a lookup
+ * when a font of the same shape, its dictionaries and the lengths of its streams, is idle in the cache, so a font never
+ * seen before costs a single copy of its streams.
+ * <p>
+ * A font parsed from its document would keep the whole document in memory through its streams, so a font missing from
+ * the cache is parsed from a copy of its dictionary, with its streams copied to memory of their own, and is weighed by
+ * the raw and decoded bytes of those streams. Parsed fonts keep mutable caches and are not safe to use from several
+ * threads, so a document leases the fonts it takes from the cache and gives them back when it is closed: a font is
+ * only ever used by one document, and a document by one thread. Several documents using the same font at once each
+ * get a copy of their own, and every copy given back stays in the cache. The fonts given back share one LRU bound of
+ * {@code scrapper.fontCacheBytes} for the process, 0 to disable the cache. Lookups are counted in
+ * {@code font_cache_hits} and {@code font_cache_misses}, fonts dropped for space in {@code font_cache_evictions}.
+ * Other resources are cached for the document only, as with the default cache.
+ */
+public class SharedFontCache extends DefaultResourceCache implements Closeable {
+
+    public static final long FONT_CACHE_BYTES = Long.getLong("scrapper.fontCacheBytes", 32L * 1024 * 1024);
+
+    /**
+     * Fonts referring to more nested objects than this are not shared
+     */
+    private static final int MAX_DEPTH = 16;
+
+    /**
+     * Weight of a font besides its streams
+     */
+    private static final int OVERHEAD = 1024;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * Keys of the fonts in the cache, by shape
+     */
+    private static final ConcurrentMap<HashCode, Deque<Key>> IDLE = new ConcurrentHashMap<>();
+
+    private static final Cache<Key, SharedFont> FONTS = CacheBuilder.newBuilder()
+                                                                    .maximumWeight(Math.max(0, FONT_CACHE_BYTES))
+                                                                    .<Key, SharedFont>weigher((key, font) -> font.weight)
+                                                                    .removalListener(n -> {
+                                                                        if (n.wasEvicted()) {
+                                                                            forget(n.getKey());
+                                                                        }
+                                                                        if (n.getCause() == RemovalCause.SIZE) {
+                                                                            Metrics.counter("font_cache_evictions").increment();
+                                                                        }
+                                                                    })
+                                                                    .build();
+
+    /**
+     * Fonts taken from the cache or parsed by this document, given back when it is closed
+     */
+    private final List<SharedFont> leased = new ArrayList<>();
+
+    @Override
+    public PDFont getFont(COSObject indirect) throws IOException {
+
+        PDFont font = super.getFont(indirect);
+        if (null != font || FONT_CACHE_BYTES <= 0) {
+            return font;
+        }
+        HashCode shape = hash(indirect, false);
+        if (null == shape) {
+            return null;
+        }
+        SharedFont shared = IDLE.containsKey(shape) ? lease(shape, hash(indirect, true)) : null;
+        if (null != shared) {
+            Metrics.counter("font_cache_hits").increment();
+        } else {
+            Metrics.counter("font_cache_misses").increment();
+            long[] weight = {OVERHEAD};
+            COSDictionary copy;
+            try {
+                copy = (COSDictionary) detach(indirect.getObject(), weight);
+                font = PDFontFactory.createFont(copy);
+            } catch (IOException | RuntimeException e) {
+                // Left to the document, which reports the font its own way
+                return null;
+            }
+            // Hashed from the copy, which is in memory, rather than by reading the streams of the document again
+            shared = new SharedFont(new Key(shape, hash(copy, true)), font, (int) Math.min(Integer.MAX_VALUE, weight[0]));
+        }
+        leased.add(shared);
+        super.put(indirect, shared.font);
+        return shared.font;
+    }
+
+    /**
+     * Give the fonts of the document back to the cache. Called once the document is done with them, since another
+     * document may use them as soon as they are back.
+     */
+    @Override
+    public void close() {
+
+        for (SharedFont font : leased) {
+            FONTS.put(font.key, font);
+            IDLE.compute(font.key.shape, (shape, keys) -> {
+                Deque<Key> idle = null != keys ? keys : new ArrayDeque<>();
+                idle.push(font.key);
+                return idle;
+            });
+        }
+        leased.clear();
+    }
+
+    /**
+     * Take a font out of the cache, so that no other document uses it until it is given back.
+     *
+     * @return The font, or null if none with this content is in the cache.
+     */
+    private static SharedFont lease(HashCode shape, HashCode content) {
+
+        if (null == content) {
+            return null;
+        }
+        while (true) {
+            Key[] taken = {null};
+            IDLE.computeIfPresent(shape, (h, keys) -> {
+                for (Iterator<Key> it = keys.iterator(); it.hasNext(); ) {
+                    Key key = it.next();
+                    if (key.content.equals(content)) {
+                        it.remove();
+                        taken[0] = key;
+                        break;
+                    }
+                }
+                return keys.isEmpty() ? null : keys;
+            });
+            if (null == taken[0]) {
+                return null;
+            }
+            SharedFont font = FONTS.asMap().remove(taken[0]);
+            if (null != font) {
+                return font;
+            }
+            // Evicted since, try the next copy
+        }
+    }
+
+    private static void forget(Key key) {
+
+        IDLE.computeIfPresent(key.shape, (shape, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * @param content True to hash the bytes of the streams, false for the shape of the font only.
+     * @return The hash of the font, or null if it cannot be shared.
+     */
+    private static HashCode hash(COSBase indirect, boolean content) throws IOException {
+
+        COSBase base = indirect instanceof COSObject ? ((COSObject) indirect).getObject() : indirect;
+        if (!(base instanceof COSDictionary)) {
+            return null;
+        }
+        COSDictionary font = (COSDictionary) base;
+        if (COSName.TYPE3.equals(font.getCOSName(COSName.SUBTYPE))) {
+            return null;
+        }
+        Hasher hasher = HASH.newHasher();
+        return hash(font, hasher, content, 0) ? hasher.hash() : null;
+    }
+
+    /**
+     * Hash an object and the objects it refers to.
+     *
+     * @return False if the object is nested too deep to be hashed.
+     */
+    private static boolean hash(COSBase base, Hasher hasher, boolean content, int depth) throws IOException {
+
+        if (depth > MAX_DEPTH) {
+            return false;
+        }
+        if (base instanceof COSObject) {
+            return hash(((COSObject) base).getObject(), hasher, content, depth + 1);
+        }
+        if (base instanceof COSDictionary) {
+            COSDictionary dictionary = (COSDictionary) base;
+            List<COSName> keys = new ArrayList<>(dictionary.keySet());
+            keys.sort(null);
+            hasher.putByte((byte) 'd').putInt(keys.size());
+            for (COSName key : keys) {
+                hasher.putString(key.getName(), StandardCharsets.UTF_8);
+                if (!hash(dictionary.getItem(key), hasher, content, depth + 1)) {
+                    return false;
+                }
+            }
+            if (base instanceof COSStream && content) {
+                hasher.putByte((byte) 's');
+                byte[] buffer = new byte[8192];
+                try (InputStream raw = ((COSStream) base).createRawInputStream()) {
+                    int n;
+                    while ((n = raw.read(buffer)) >= 0) {
+                        hasher.putBytes(buffer, 0, n);
+                    }
+                }
+            }
+        } else if (base instanceof COSArray) {
+            COSArray array = (COSArray) base;
+            hasher.putByte((byte) 'a').putInt(array.size());
+            for (int i = 0; i < array.size(); i++) {
+                if (!hash(array.get(i), hasher, content, depth + 1)) {
+                    return false;
+                }
+            }
+        } else if (base instanceof COSName) {
+            hasher.putByte((byte) 'n').putString(((COSName) base).getName(), StandardCharsets.UTF_8);
+        } else if (base instanceof COSString) {
+            byte[] bytes = ((COSString) base).getBytes();
+            hasher.putByte((byte) 't').putInt(bytes.length).putBytes(bytes);
+        } else if (base instanceof COSInteger) {
+            hasher.putByte((byte) 'i').putLong(((COSInteger) base).longValue());
+        } else if (base instanceof COSFloat) {
+            hasher.putByte((byte) 'f').putFloat(((COSFloat) base).floatValue());
+        } else if (base instanceof COSBoolean) {
+            hasher.putByte((byte) 'b').putBoolean(((COSBoolean) base).getValue());
+        } else {
+            hasher.putByte((byte) '0');
+        }
+        return true;
+    }
+
+    /**
+     * Copy an object and the objects it refers to, streams to memory of their own, so that the copy refers to nothing
+     * of its document. Only called on objects {@link #hash} went through, so not nested too deep.
+     *
+     * @param weight Incremented by the raw and decoded lengths of the streams.
+     */
+    private static COSBase detach(COSBase base, long[] weight) throws IOException {
+
+        if (base instanceof COSObject) {
+            return detach(((COSObject) base).getObject(), weight);
+        }
+        if (base instanceof COSDictionary) {
+            COSDictionary dictionary = (COSDictionary) base;
+            COSDictionary copy = base instanceof COSStream ? new COSStream() : new COSDictionary();
+            for (COSName key : dictionary.keySet()) {
+                COSBase item = detach(dictionary.getItem(key), weight);
+                copy.setItem(key, null != item ? item : COSNull.NULL);
+            }
+            if (base instanceof COSStream) {
+                try (InputStream in = ((COSStream) base).createRawInputStream();
+                     OutputStream out = ((COSStream) copy).createRawOutputStream()) {
+                    weight[0] += ByteStreams.copy(in, out);
+                }
+                try (InputStream decoded = ((COSStream) copy).createInputStream()) {
+                    weight[0] += ByteStreams.exhaust(decoded);
+                }
+            }
+            return copy;
+        }
+        if (base instanceof COSArray) {
+            COSArray array = (COSArray) base;
+            COSArray copy = new COSArray();
+            for (int i = 0; i < array.size(); i++) {
+                COSBase item = detach(array.get(i), weight);
+                copy.add(null != item ? item : COSNull.NULL);
+            }
+            return copy;
+        }
+        // Names, strings, numbers and booleans hold nothing of their document
+        return base;
+    }
+
+    /**
+     * The shape and content hashes of a font. Each copy of a font in the cache has a key of its own, equal to no other
+     */
+    private static class Key {
+
+        private final HashCode shape;
+        private final HashCode content;
+
+        Key(HashCode shape, HashCode content) {
+
+            this.shape = shape;
+            this.content = content;
+        }
+    }
+
+    private static class SharedFont {
+
+        private final Key key;
+        private final PDFont font;
+        private final int weight;
+
+        SharedFont(Key key, PDFont font, int weight) {
+
+            this.key = key;
+            this.font = font;
+            this.weight = weight;
+        }
+    }
+}
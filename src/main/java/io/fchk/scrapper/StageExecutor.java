@@ -0,0 +1,66 @@
+package io.fchk.scrapper;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The threads of one stage of the pipeline, fed by a bounded queue.
+ * <p>
+ * Submitting to a stage whose queue is full blocks the submitting thread, usually a thread of the stage before, until
+ * there is room. A slow stage thus holds back the stages feeding it instead of letting the work between them pile up
+ * in memory.
+ */
+@Slf4j
+public class StageExecutor implements Executor, AutoCloseable {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    public StageExecutor(String name, int threads, int capacity) {
+
+        if (threads < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Stage " + name + " needs threads and room: " + threads + " threads, capacity " + capacity);
+        }
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity),
+                                               new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build(),
+                                               (runnable, e) -> {
+                                                   if (e.isShutdown()) {
+                                                       throw new RejectedExecutionException("Stage " + name + " is shut down");
+                                                   }
+                                                   try {
+                                                       e.getQueue().put(runnable);
+                                                   } catch (InterruptedException ie) {
+                                                       Thread.currentThread().interrupt();
+                                                       throw new RejectedExecutionException("Interrupted waiting for room in stage " + name, ie);
+                                                   }
+                                               });
+        Metrics.gauge(name + "_queued", () -> executor.getQueue().size());
+        Metrics.gauge(name + "_active", executor::getActiveCount);
+    }
+
+    /**
+     * Run a task on the stage, waiting for room in its queue if it is full.
+     */
+    @Override
+    public void execute(Runnable task) {
+
+        executor.execute(task);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+
+        executor.shutdown();
+        if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            log.warn("Stage " + name + " still running after shutdown, interrupting");
+            executor.shutdownNow();
+        }
+    }
+}
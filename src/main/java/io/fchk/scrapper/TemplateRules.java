@@ -0,0 +1,64 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rule file describing the templates of the declaration pages, as read from JSON before it is compiled by
+ * {@link Templates}.
+ * <p>
+ * A template is recognized by its landmarks: the page has to contain all the strings of one of the sets in
+ * {@code containing}, whatever the spaces and line breaks. The templates are tried in the order of the file. Its fields
+ * are then extracted by rules of four types, applied in order:
+ * <ul>
+ * <li>{@code yesNo}: the {@code pattern} captures the answer, {@code field} is set to true if 有 is ticked and to false
+ * if 否 is.</li>
+ * <li>{@code text}: each group of the {@code pattern} goes to a field of {@code fields}, or to {@code field} if there is
+ * one group, set or, with {@code append}, appended to what the previous pages gave.</li>
+ * <li>{@code companyPositions}: the {@code pattern} captures the name, nature, position and holding of one or more
+ * companies, four groups each, added to {@code field}.</li>
+ * <li>{@code table}: the two column table between the {@code left} and {@code right} headers and the {@code bottom}
+ * text, in the {@code region} x, y, width and height, is added to {@code field}.</li>
+ * </ul>
+ * Patterns are landmarks joined by {@code (.*?)} and {@code .*?}, see {@link LandmarkExtractor}, matched against the
+ * text of the page without line breaks. Fields are the properties of {@link Declaration}.
+ */
+@Data
+public class TemplateRules {
+
+    private List<Template> templates = new ArrayList<>();
+
+    @Data
+    public static class Template {
+        private String name;
+        private List<List<String>> containing = new ArrayList<>();
+        private List<Field> fields = new ArrayList<>();
+    }
+
+    @Data
+    public static class Field {
+        private Type type;
+        private String field;
+        private List<String> fields;
+        private String pattern;
+        private boolean append;
+        private String left;
+        private String right;
+        private String bottom;
+        private List<Integer> region;
+    }
+
+    public enum Type {
+        @JsonProperty("yesNo")
+        YES_NO,
+        @JsonProperty("text")
+        TEXT,
+        @JsonProperty("companyPositions")
+        COMPANY_POSITIONS,
+        @JsonProperty("table")
+        TABLE
+    }
+}
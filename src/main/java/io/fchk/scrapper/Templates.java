@@ -0,0 +1,196 @@
+package io.fchk.scrapper;
+
+import com.google.common.io.Resources;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The templates of the declaration pages, compiled from a rule file, see {@link TemplateRules}.
+ * <p>
+ * The rules are the built-in {@code templates.json}, or the file in {@code scrapper.templates}. That file is watched
+ * and compiled again whenever it changes, so that a long running scrapper picks up new or fixed templates without a
+ * restart. A file that does not compile is logged, counted in {@code template_reload_failures}, and the templates in
+ * use are kept. A document is parsed with the templates in use when its parse started, every page of it alike.
+ */
+@Slf4j
+public final class Templates {
+
+    public static final String RULES = System.getProperty("scrapper.templates");
+
+    /**
+     * Time for the editor to finish writing the file before it is read
+     */
+    private static final long RELOAD_DELAY_MS = 200L;
+
+    private static final URL SOURCE;
+
+    private static volatile Templates current;
+
+    static {
+        try {
+            SOURCE = null == RULES ? Resources.getResource("templates.json") : new File(RULES).toURI().toURL();
+            current = compile(SOURCE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the templates from " + RULES, e);
+        }
+        if (null != RULES) {
+            watch(new File(RULES));
+        }
+    }
+
+    private final List<PageParser> parsers;
+    private final Map<String, PageParser> byName = new LinkedHashMap<>();
+
+    /**
+     * All the landmarks of all the templates, compiled into one automaton
+     */
+    private final LandmarkAutomaton landmarks;
+
+    /**
+     * Indexes in {@link #landmarks} of the landmarks of each template
+     */
+    private final int[][][] landmarkIds;
+
+    public Templates(TemplateRules rules) {
+
+        List<PageParser> parsers = new ArrayList<>();
+        List<String> landmarkList = new ArrayList<>();
+        Map<String, Integer> ids = new HashMap<>();
+        landmarkIds = new int[rules.getTemplates().size()][][];
+        for (TemplateRules.Template template : rules.getTemplates()) {
+            PageParser parser = new PageParser(template, parsers.size());
+            if (null != byName.put(parser.getName(), parser)) {
+                throw new IllegalArgumentException("Template " + parser.getName() + " is defined twice");
+            }
+            landmarkIds[parser.getIndex()] = PageParser.landmarkIds(template.getContaining(), landmarkList, ids);
+            parsers.add(parser);
+        }
+        this.parsers = Collections.unmodifiableList(parsers);
+        this.landmarks = new LandmarkAutomaton(landmarkList, "\n\r ");
+    }
+
+    /**
+     * @return The templates in use.
+     */
+    public static Templates current() {
+
+        return current;
+    }
+
+    public static Templates compile(URL rules) throws IOException {
+
+        return new Templates(Json.MAPPER.readValue(rules, TemplateRules.class));
+    }
+
+    /**
+     * Compile the rule file again and use it from now on, unless it does not compile.
+     *
+     * @return The templates in use.
+     */
+    public static synchronized Templates reload() {
+
+        try {
+            current = compile(SOURCE);
+            Metrics.counter("template_reloads").increment();
+            log.info("Loaded " + current.parsers.size() + " templates from " + SOURCE);
+        } catch (IOException | RuntimeException e) {
+            Metrics.counter("template_reload_failures").increment();
+            log.error("Keeping the templates in use, " + SOURCE + " does not compile: " + e.getMessage());
+        }
+        return current;
+    }
+
+    private static void watch(File file) {
+
+        Path path = file.getAbsoluteFile().toPath();
+        Path dir = path.getParent();
+        Thread watcher = new Thread(() -> {
+            try (WatchService service = dir.getFileSystem().newWatchService()) {
+                dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                while (true) {
+                    WatchKey key = service.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || path.getFileName().equals(event.context());
+                    }
+                    if (!key.reset()) {
+                        log.warn("Stopped watching " + path + ", its directory is gone");
+                        return;
+                    }
+                    if (changed) {
+                        Thread.sleep(RELOAD_DELAY_MS);
+                        for (WatchKey k = service.poll(); null != k; k = service.poll()) {
+                            k.pollEvents();
+                            k.reset();
+                        }
+                        reload();
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Stopped watching " + path, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "templates-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * @return The templates, in the order they are tried.
+     */
+    public List<PageParser> getParsers() {
+
+        return parsers;
+    }
+
+    /**
+     * @return The template of the name, or null if there is none.
+     */
+    public PageParser get(String name) {
+
+        return byName.get(name);
+    }
+
+    /**
+     * Find the template of a page, scanning the text of the page once whatever the number of templates.
+     *
+     * @param content The page.
+     * @return The first template recognizing the page, or null if none does.
+     */
+    public PageParser classify(PageContext content) {
+
+        return classify(landmarks.scan(content.getRawText()));
+    }
+
+    private PageParser classify(BitSet found) {
+
+        for (int i = 0; i < parsers.size(); i++) {
+            if (matches(i, found)) {
+                return parsers.get(i);
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(int parser, BitSet found) {
+
+        return PageParser.matches(found, landmarkIds[parser]);
+    }
+}
@@ -0,0 +1,129 @@
+package io.fchk.scrapper;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Streams the rows of the input workbook with the POI event model, instead of loading the whole workbook first.
+ * <p>
+ * Each sheet is a region. Rows with {@code 文字版本} in column 3 are handed over as they are read, with the name
+ * in column 1 and the url in column 4. Rows missing any of those cells are skipped.
+ */
+public class WorkbookReader {
+
+    private static final int NAME_COLUMN = 1;
+    private static final int TYPE_COLUMN = 3;
+    private static final int URL_COLUMN = 4;
+
+    public interface RowHandler {
+        void row(String region, String name, String url) throws IOException;
+    }
+
+    public static void read(File file, RowHandler handler) throws IOException {
+
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Unable to open " + file, e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            DataFormatter formatter = new DataFormatter();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    XMLReader parser = SAXHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null, strings, new RowCollector(sheets.getSheetName(), handler), formatter, false));
+                    parser.parse(new InputSource(sheet));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Unable to read " + file, e);
+        } finally {
+            // Read only, close() would try to save it
+            pkg.revert();
+        }
+    }
+
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final String region;
+        private final RowHandler handler;
+        private String name;
+        private String type;
+        private String url;
+
+        RowCollector(String region, RowHandler handler) {
+
+            this.region = region;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+
+            name = null;
+            type = null;
+            url = null;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+
+            if (null != type && type.contains("文字版本") && null != name && null != url) {
+                try {
+                    handler.row(region, name, url);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+
+            if (null == cellReference) {
+                return;
+            }
+            switch (new CellReference(cellReference).getCol()) {
+                case NAME_COLUMN:
+                    name = formattedValue;
+                    break;
+                case TYPE_COLUMN:
+                    type = formattedValue;
+                    break;
+                case URL_COLUMN:
+                    url = formattedValue;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package io.fchk.scrapper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveLimitTest {
+
+    private static final long LATENCY = 1_000_000L;
+
+    @Test
+    public void failureHalvesTheLimit() {
+
+        AdaptiveLimit limit = new AdaptiveLimit(16, 1, 64);
+        limit.onFailure(System.nanoTime());
+        assertEquals(8, limit.get());
+        limit.onFailure(System.nanoTime());
+        assertEquals(4, limit.get());
+    }
+
+    @Test
+    public void failuresOfRequestsSentBeforeTheDecreaseCountOnce() {
+
+        AdaptiveLimit limit = new AdaptiveLimit(16, 1, 64);
+        long sent = System.nanoTime();
+        limit.onFailure(sent);
+        limit.onFailure(sent);
+        limit.onFailure(sent);
+        assertEquals(8, limit.get());
+    }
+
+    @Test
+    public void failureStopsAtTheMinimum() {
+
+        AdaptiveLimit limit = new AdaptiveLimit(4, 3, 64);
+        limit.onFailure(System.nanoTime());
+        assertEquals(3, limit.get());
+    }
+
+    @Test
+    public void usedLimitGrowsByOnePerWindow() {
+
+        AdaptiveLimit limit = new AdaptiveLimit(10, 1, 64);
+        for (int i = 0; i < 20; i++) {
+            limit.onSuccess(LATENCY, limit.get());
+        }
+        assertEquals(11, limit.get());
+        for (int i = 0; i < 22; i++) {
+            limit.onSuccess(LATENCY, limit.get());
+        }
+        assertEquals(13, limit.get());
+    }
+
+    @Test
+    public void unusedLimitDoesNotGrow() {
+
+        AdaptiveLimit limit = new AdaptiveLimit(10, 1, 64);
+        for (int i = 0; i < 100; i++) {
+            limit.onSuccess(LATENCY, 2);
+        }
+        assertEquals(10, limit.get());
+    }
+
+    @Test
+    public void growthStopsAtTheMaximum() {
+
+        AdaptiveLimit limit = new AdaptiveLimit(10, 1, 12);
+        for (int i = 0; i < 100; i++) {
+            limit.onSuccess(LATENCY, limit.get());
+        }
+        assertEquals(12, limit.get());
+    }
+
+    @Test
+    public void risingLatencyShrinksTheLimit() {
+
+        AdaptiveLimit limit = new AdaptiveLimit(20, 1, 64);
+        for (int i = 0; i < 50; i++) {
+            limit.onSuccess(LATENCY, 0);
+        }
+        for (int i = 0; i < 10; i++) {
+            limit.onSuccess(10 * LATENCY, limit.get());
+        }
+        assertTrue("limit " + limit.get(), limit.get() < 20);
+    }
+}
@@ -0,0 +1,83 @@
+package io.fchk.scrapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CheckpointJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumedRunTakesEachCompletedUrlOnce() throws IOException {
+
+        File file = folder.newFile();
+        try (CheckpointJournal journal = new CheckpointJournal(file)) {
+            journal.recordSuccess("http://a", new Declaration().setPersonName("A").setQ4Yn(true));
+            journal.recordFailure("http://b", new IOException("HTTP 404"));
+        }
+        try (CheckpointJournal journal = new CheckpointJournal(file)) {
+            assertEquals(1, journal.getCompletedCount());
+            assertEquals(Collections.singleton("http://b"), journal.getFailed());
+            Declaration resumed = journal.takeCompleted("http://a");
+            assertEquals("A", resumed.getPersonName());
+            assertEquals(Boolean.TRUE, resumed.getQ4Yn());
+            assertNull(journal.takeCompleted("http://a"));
+            assertNull(journal.takeCompleted("http://b"));
+        }
+    }
+
+    @Test
+    public void lastOutcomeOfAUrlWins() throws IOException {
+
+        File file = folder.newFile();
+        try (CheckpointJournal journal = new CheckpointJournal(file)) {
+            journal.recordFailure("http://a", new IOException("timeout"));
+            journal.recordSuccess("http://a", new Declaration().setPersonName("A"));
+            journal.recordSuccess("http://b", new Declaration().setPersonName("B"));
+            journal.recordFailure("http://b", new IOException("timeout"));
+            assertEquals(Collections.singleton("http://b"), journal.getFailed());
+        }
+        try (CheckpointJournal journal = new CheckpointJournal(file)) {
+            assertEquals(Collections.singleton("http://b"), journal.getFailed());
+            assertEquals("A", journal.takeCompleted("http://a").getPersonName());
+            assertNull(journal.takeCompleted("http://b"));
+        }
+    }
+
+    @Test
+    public void tornLastLineIsIgnoredAndTerminated() throws IOException {
+
+        File file = folder.newFile();
+        try (CheckpointJournal journal = new CheckpointJournal(file)) {
+            journal.recordSuccess("http://a", new Declaration().setPersonName("A"));
+        }
+        // The run died halfway through writing a line
+        Files.write(file.toPath(), "{\"url\":\"http://b\",\"status\":\"OK\",\"decl".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (CheckpointJournal journal = new CheckpointJournal(file)) {
+            assertEquals(1, journal.getCompletedCount());
+            assertNull(journal.takeCompleted("http://b"));
+            journal.recordSuccess("http://b", new Declaration().setPersonName("B"));
+        }
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        try (CheckpointJournal journal = new CheckpointJournal(file)) {
+            assertEquals(2, journal.getCompletedCount());
+            assertEquals("A", journal.takeCompleted("http://a").getPersonName());
+            assertEquals("B", journal.takeCompleted("http://b").getPersonName());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void changesAgainstAJsonOutputAreClassified() throws IOException {
+
+        checkChanges(DeclarationWriter.Format.JSON);
+    }
+
+    @Test
+    public void changesAgainstAnNdjsonOutputAreClassified() throws IOException {
+
+        checkChanges(DeclarationWriter.Format.NDJSON);
+    }
+
+    private void checkChanges(DeclarationWriter.Format format) throws IOException {
+
+        File previous = folder.newFile();
+        try (DeclarationWriter writer = new DeclarationWriter(previous, format)) {
+            writer.write("http://same", new Declaration().setPersonName("S").setQ4Yn(true));
+            writer.write("http://changed", new Declaration().setPersonName("C").setQ4Yn(true).setQ4FreeText("無"));
+            writer.write("http://removed", new Declaration().setPersonName("R"));
+            writer.write("http://failed", new Declaration().setPersonName("F"));
+        }
+        List<JsonNode> lines = delta(previous, writer -> {
+            writer.write("http://same", new Declaration().setPersonName("S").setQ4Yn(true));
+            writer.write("http://changed", new Declaration().setPersonName("C").setQ4Yn(false).setQ4FreeText("無"));
+            writer.write("http://added", new Declaration().setPersonName("A"));
+            writer.skip("http://failed");
+        });
+
+        assertEquals(3, lines.size());
+        assertEquals("changed", lines.get(0).get("op").asText());
+        assertEquals("http://changed", lines.get(0).get("url").asText());
+        // Only the field that changed
+        assertEquals(Arrays.asList("q4Yn"), fieldNames(lines.get(0).get("fields")));
+        assertFalse(lines.get(0).get("fields").get("q4Yn").asBoolean());
+        assertEquals("added", lines.get(1).get("op").asText());
+        assertEquals("http://added", lines.get(1).get("url").asText());
+        assertEquals("A", lines.get(1).get("declaration").get("personName").asText());
+        assertEquals("removed", lines.get(2).get("op").asText());
+        assertEquals("http://removed", lines.get(2).get("url").asText());
+    }
+
+    @Test
+    public void everythingIsAddedWithoutAPreviousOutput() throws IOException {
+
+        List<JsonNode> lines = delta(new File(folder.getRoot(), "missing.json"), writer -> {
+            writer.write("http://a", new Declaration());
+            writer.write("http://b", new Declaration());
+        });
+        assertEquals(2, lines.size());
+        for (JsonNode line : lines) {
+            assertEquals("added", line.get("op").asText());
+        }
+    }
+
+    @Test
+    public void noChangeWritesAnEmptyDelta() throws IOException {
+
+        File previous = folder.newFile();
+        try (DeclarationWriter writer = new DeclarationWriter(previous, DeclarationWriter.Format.JSON)) {
+            writer.write("http://a", new Declaration().setPersonName("A"));
+        }
+        File file = folder.newFile();
+        try (DeltaWriter delta = new DeltaWriter(previous, file)) {
+            delta.write("http://a", new Declaration().setPersonName("A"));
+            delta.finish();
+        }
+        assertTrue(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).isEmpty());
+    }
+
+    private interface Changes {
+        void write(DeltaWriter writer) throws IOException;
+    }
+
+    private List<JsonNode> delta(File previous, Changes changes) throws IOException {
+
+        File file = folder.newFile();
+        try (DeltaWriter delta = new DeltaWriter(previous, file)) {
+            changes.write(delta);
+            delta.finish();
+        }
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            lines.add(Json.MAPPER.readTree(line));
+        }
+        return lines;
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+}
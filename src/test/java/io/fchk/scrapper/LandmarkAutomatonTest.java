@@ -0,0 +1,99 @@
+package io.fchk.scrapper;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The automaton against {@link String#contains} and {@link String#indexOf} on the text with the ignored characters
+ * removed.
+ */
+public class LandmarkAutomatonTest {
+
+    private static final String IGNORED = "\n\r ";
+
+    private final Random random = new Random(13);
+
+    @Test
+    public void scanFindsWhatTheNormalizedTextContains() {
+
+        for (int i = 0; i < 2_000; i++) {
+            List<String> patterns = new ArrayList<>();
+            for (int n = 1 + random.nextInt(8); n > 0; n--) {
+                patterns.add(random("aab類", 1 + random.nextInt(4)));
+            }
+            checkScan(patterns, random("aab類\n ", random.nextInt(50)));
+        }
+    }
+
+    @Test
+    public void scanFindsTheLandmarksOfThePages() throws IOException {
+
+        List<String> pages = TemplatesTest.variants(TemplatesTest.pages());
+        for (String page : pages) {
+            // Landmarks cut from the pages, most of them in several pages
+            String normalized = normalize(pages.get(random.nextInt(pages.size())));
+            List<String> patterns = new ArrayList<>();
+            for (int n = 0; n < 20 && normalized.length() > 1; n++) {
+                int start = random.nextInt(normalized.length() - 1);
+                patterns.add(normalized.substring(start, Math.min(normalized.length(), start + 1 + random.nextInt(12))));
+            }
+            if (!patterns.isEmpty()) {
+                checkScan(patterns, page);
+            }
+        }
+    }
+
+    @Test
+    public void locateFindsEveryOccurrence() {
+
+        for (int i = 0; i < 2_000; i++) {
+            List<String> patterns = new ArrayList<>();
+            for (int n = 1 + random.nextInt(8); n > 0; n--) {
+                patterns.add(random("aab類", 1 + random.nextInt(4)));
+            }
+            String text = random("aab類", random.nextInt(50));
+            LandmarkAutomaton.Occurrences occurrences = new LandmarkAutomaton(patterns, "").locate(text);
+            for (int p = 0; p < patterns.size(); p++) {
+                for (int from = 0; from <= text.length(); from++) {
+                    assertEquals(patterns.get(p) + " from " + from + " in " + text, text.indexOf(patterns.get(p), from), occurrences.indexOf(p, from));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void locateRefusesIgnoredCharacters() {
+
+        new LandmarkAutomaton(new ArrayList<>(), IGNORED).locate("text");
+    }
+
+    private static void checkScan(List<String> patterns, String text) {
+
+        BitSet found = new LandmarkAutomaton(patterns, IGNORED).scan(text);
+        String normalized = normalize(text);
+        for (int p = 0; p < patterns.size(); p++) {
+            assertEquals(patterns.get(p) + " in " + normalized, normalized.contains(patterns.get(p)), found.get(p));
+        }
+    }
+
+    private static String normalize(String text) {
+
+        return text.replaceAll("[" + IGNORED + "]", "");
+    }
+
+    private String random(String alphabet, int length) {
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,126 @@
+package io.fchk.scrapper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The extractor against the lazy DOTALL regex its template is written as.
+ */
+public class LandmarkExtractorTest {
+
+    private static final String ALPHABET = "ab類-\n ";
+
+    private final Random random = new Random(11);
+
+    @Test
+    public void randomTextMatchesLikeTheRegex() {
+
+        for (int i = 0; i < 2_000; i++) {
+            List<String> landmarks = landmarks();
+            String text = random(random.nextInt(60));
+            check(template(landmarks), text);
+        }
+    }
+
+    @Test
+    public void editedTextMatchesLikeTheRegex() {
+
+        for (int i = 0; i < 2_000; i++) {
+            List<String> landmarks = landmarks();
+            StringBuilder text = new StringBuilder(random(random.nextInt(5)));
+            for (String landmark : landmarks) {
+                text.append(landmark).append(random(random.nextInt(8)));
+            }
+            for (int edits = random.nextInt(4); edits > 0 && text.length() > 0; edits--) {
+                int at = random.nextInt(text.length());
+                if (random.nextBoolean()) {
+                    text.delete(at, Math.min(text.length(), at + 1 + random.nextInt(3)));
+                } else {
+                    text.insert(at, landmarks.get(random.nextInt(landmarks.size())));
+                }
+            }
+            check(template(landmarks), text.toString());
+        }
+    }
+
+    @Test
+    public void templateIsSplitIntoLandmarksAndGroups() {
+
+        LandmarkExtractor extractor = new LandmarkExtractor("公司名稱(.*?)業務性質.*?身份(.*?)若你有更多");
+        assertEquals(Arrays.asList("公司名稱", "業務性質", "身份", "若你有更多"), Arrays.asList(extractor.getLandmarks()));
+        assertEquals(2, extractor.getGroupCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void templateStartingWithAGapIsRejected() {
+
+        new LandmarkExtractor("(.*?)身份");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void templateEndingWithAGapIsRejected() {
+
+        new LandmarkExtractor("身份.*?");
+    }
+
+    private void check(String template, String text) {
+
+        LandmarkExtractor extractor = new LandmarkExtractor(template);
+        Matcher regex = Pattern.compile(template, Pattern.DOTALL).matcher(text);
+        LandmarkExtractor.Match match = extractor.match(text);
+        LandmarkAutomaton automaton = new LandmarkAutomaton(Arrays.asList(extractor.getLandmarks()), "");
+        int[] ids = new int[extractor.getLandmarks().length];
+        Arrays.setAll(ids, i -> i);
+        LandmarkExtractor.Match located = extractor.match(text, automaton.locate(text), ids);
+
+        String message = template + " in " + text;
+        boolean found = regex.find();
+        assertEquals(message, found, match.find());
+        assertEquals(message, found, located.find());
+        if (found) {
+            assertEquals(message, regex.groupCount(), extractor.getGroupCount());
+            for (int g = 1; g <= regex.groupCount(); g++) {
+                assertEquals(message, regex.group(g), match.group(g));
+                assertEquals(message, regex.group(g), located.group(g));
+            }
+        }
+    }
+
+    private List<String> landmarks() {
+
+        List<String> landmarks = new ArrayList<>();
+        for (int n = 1 + random.nextInt(4); n > 0; n--) {
+            landmarks.add(random(1 + random.nextInt(3)));
+        }
+        return landmarks;
+    }
+
+    /**
+     * @return The landmarks joined by captured and skipped gaps.
+     */
+    private String template(List<String> landmarks) {
+
+        StringBuilder template = new StringBuilder(landmarks.get(0));
+        for (int i = 1; i < landmarks.size(); i++) {
+            template.append(random.nextBoolean() ? "(.*?)" : ".*?").append(landmarks.get(i));
+        }
+        return template.toString();
+    }
+
+    private String random(int length) {
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+}
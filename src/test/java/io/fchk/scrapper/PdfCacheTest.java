@@ -0,0 +1,160 @@
+package io.fchk.scrapper;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PdfCacheTest {
+
+    private static final byte[] CONTENT = "%PDF-1.4 declaration".getBytes(StandardCharsets.US_ASCII);
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Mon, 01 Jul 2019 00:00:00 GMT";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * If-None-Match of each request, and the status answered
+     */
+    private final List<String> validators = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> statuses = Collections.synchronizedList(new ArrayList<>());
+    private volatile byte[] content = CONTENT;
+    private volatile String etag = ETAG;
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/doc.pdf", exchange -> {
+            String validator = exchange.getRequestHeaders().getFirst("If-None-Match");
+            validators.add(validator);
+            if (etag.equals(validator)) {
+                statuses.add(304);
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            statuses.add(200);
+            byte[] body = content;
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/doc.pdf";
+    }
+
+    @After
+    public void stopServer() {
+
+        server.stop(0);
+    }
+
+    @Test
+    public void cachedUrlIsRevalidatedAndNotDownloadedAgain() throws IOException {
+
+        File dir = folder.newFolder("cache");
+        assertArrayEquals(CONTENT, read(new PdfCache(dir, new FetchClient()).fetch(url)));
+        assertNull(validators.get(0));
+
+        long notModified = Metrics.counter("not_modified").sum();
+        long downloaded = Metrics.counter("downloaded").sum();
+        assertArrayEquals(CONTENT, read(new PdfCache(dir, new FetchClient()).fetch(url)));
+        assertEquals(ETAG, validators.get(1));
+        assertEquals(Integer.valueOf(304), statuses.get(1));
+        assertEquals(notModified + 1, Metrics.counter("not_modified").sum());
+        assertEquals(downloaded, Metrics.counter("downloaded").sum());
+    }
+
+    @Test
+    public void urlIsFetchedOncePerRun() throws IOException {
+
+        PdfCache cache = new PdfCache(folder.newFolder("cache"), new FetchClient());
+        assertArrayEquals(CONTENT, read(cache.fetch(url)));
+        assertArrayEquals(CONTENT, read(cache.fetch(url)));
+        assertEquals(1, statuses.size());
+    }
+
+    @Test
+    public void missingContentIsDownloadedAgain() throws IOException {
+
+        File dir = folder.newFolder("cache");
+        read(new PdfCache(dir, new FetchClient()).fetch(url));
+        for (File blob : new File(dir, "blobs").listFiles()) {
+            Files.delete(blob.toPath());
+        }
+        assertArrayEquals(CONTENT, read(new PdfCache(dir, new FetchClient()).fetch(url)));
+        assertNull(validators.get(1));
+        assertEquals(Integer.valueOf(200), statuses.get(1));
+    }
+
+    @Test
+    public void sweepDeletesContentNoUrlPointsTo() throws IOException {
+
+        File dir = folder.newFolder("cache");
+        read(new PdfCache(dir, new FetchClient()).fetch(url));
+        File[] stored = new File(dir, "blobs").listFiles();
+        assertEquals(1, stored.length);
+        // Stored by an earlier run
+        assertTrue(stored[0].setLastModified(System.currentTimeMillis() - 60_000));
+
+        byte[] changed = "%PDF-1.4 amended declaration".getBytes(StandardCharsets.US_ASCII);
+        content = changed;
+        etag = "\"v2\"";
+        PdfCache cache = new PdfCache(dir, new FetchClient());
+        assertArrayEquals(changed, read(cache.fetch(url)));
+        assertEquals(2, new File(dir, "blobs").listFiles().length);
+
+        cache.sweep();
+        File[] left = new File(dir, "blobs").listFiles();
+        assertEquals(1, left.length);
+        assertArrayEquals(changed, Files.readAllBytes(left[0].toPath()));
+        assertArrayEquals(changed, read(new PdfCache(dir, new FetchClient()).fetch(url)));
+    }
+
+    @Test
+    public void sweepKeepsContentStoredSinceTheCacheWasOpened() throws IOException {
+
+        File dir = folder.newFolder("cache");
+        PdfCache cache = new PdfCache(dir, new FetchClient());
+        File blobs = new File(dir, "blobs");
+        // Written by another process which has not written its entry yet
+        Files.write(new File(blobs, "0123.pdf").toPath(), CONTENT);
+        assertTrue(new File(blobs, "0123.pdf").setLastModified(System.currentTimeMillis() + 60_000));
+        cache.sweep();
+        assertTrue(new File(blobs, "0123.pdf").isFile());
+    }
+
+    private byte[] read(PdfDownload download) throws IOException {
+
+        try (PdfDownload ignored = download) {
+            File copy = folder.newFile();
+            download.copyTo(copy);
+            return Files.readAllBytes(copy.toPath());
+        }
+    }
+}
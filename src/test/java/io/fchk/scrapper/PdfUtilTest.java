@@ -0,0 +1,61 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PdfUtilTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void duplicateUrlTakesTheValuesOfItsLastRow() throws IOException {
+
+        File output = folder.newFile();
+        try (DeclarationWriter writer = new DeclarationWriter(output, DeclarationWriter.Format.JSON)) {
+            PdfUtil.RowOutput rows = new PdfUtil.RowOutput(writer, null);
+            assertTrue(rows.add("http://early", "first", "HK"));
+            assertTrue(rows.add("http://late", "first", "HK"));
+            // Completed, or resumed from the journal, before its second row is read
+            rows.write("http://early", new Declaration());
+            assertFalse(rows.add("http://early", "last", "KLN"));
+            assertFalse(rows.add("http://late", "last", "NT"));
+            assertEquals(0, writer.getCount());
+
+            rows.finishRows();
+            assertEquals(1, writer.getCount());
+            rows.write("http://late", new Declaration());
+        }
+        JsonNode written = Json.MAPPER.readTree(output);
+        assertEquals("last", written.get("http://early").get("personName").asText());
+        assertEquals("KLN", written.get("http://early").get("region").asText());
+        assertEquals("last", written.get("http://late").get("personName").asText());
+        assertEquals("NT", written.get("http://late").get("region").asText());
+    }
+
+    @Test
+    public void rowsAreWrittenToTheDelta() throws IOException {
+
+        File delta = folder.newFile();
+        try (DeclarationWriter writer = new DeclarationWriter(folder.newFile(), DeclarationWriter.Format.NDJSON);
+             DeltaWriter deltaWriter = new DeltaWriter(new File(folder.getRoot(), "none"), delta)) {
+            PdfUtil.RowOutput rows = new PdfUtil.RowOutput(writer, deltaWriter);
+            rows.add("http://a", "first", "HK");
+            rows.add("http://a", "last", "KLN");
+            rows.finishRows();
+            rows.write("http://a", new Declaration());
+        }
+        JsonNode line = Json.MAPPER.readTree(delta);
+        assertEquals("added", line.get("op").asText());
+        assertEquals("last", line.get("declaration").get("personName").asText());
+    }
+}
@@ -0,0 +1,126 @@
+package io.fchk.scrapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardCoordinatorTest {
+
+    private static final long LEASE_MS = 1_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger setups = new AtomicInteger();
+
+    private ShardCoordinator coordinator(File dir, String run, String worker) throws IOException {
+
+        return new ShardCoordinator(dir, run, 2, worker, LEASE_MS, setups::incrementAndGet);
+    }
+
+    @Test
+    public void workersShareTheShardsThenOneMerges() throws IOException {
+
+        File dir = folder.newFolder("shards");
+        ShardCoordinator a = coordinator(dir, "run", "a");
+        ShardCoordinator b = coordinator(dir, "run", "b");
+        assertEquals(1, setups.get());
+
+        ShardCoordinator.Claim first = a.claim();
+        ShardCoordinator.Claim second = b.claim();
+        assertEquals(0, first.getIndex());
+        assertEquals(1, second.getIndex());
+        // Both shards held, and the merge waits for them
+        assertNull(a.claim());
+
+        assertTrue(a.complete(first, "shard-0-1.sorted.ndjson"));
+        assertNull(a.claim());
+        assertTrue(b.complete(second, "shard-1-1.sorted.ndjson"));
+        ShardCoordinator.Claim merge = b.claim();
+        assertEquals(2, merge.getIndex());
+        assertFalse(a.isFinished());
+        assertEquals(new File(dir, "shard-0-1.sorted.ndjson"), a.getOutputs().get(0));
+        assertEquals(new File(dir, "shard-1-1.sorted.ndjson"), a.getOutputs().get(1));
+
+        assertTrue(b.complete(merge, b.file(merge, ".merged").getName()));
+        assertTrue(a.isFinished());
+        assertEquals(merge, a.getMerge());
+        assertNull(a.claim());
+    }
+
+    @Test
+    public void expiredLeaseIsTakenOverAsANewAttempt() throws IOException, InterruptedException {
+
+        File dir = folder.newFolder("shards");
+        ShardCoordinator a = coordinator(dir, "run", "a");
+        ShardCoordinator b = coordinator(dir, "run", "b");
+        ShardCoordinator.Claim lapsed = a.claim();
+        assertTrue(a.renew(lapsed));
+        ShardCoordinator.Claim other = b.claim();
+        assertEquals(1, other.getIndex());
+
+        Thread.sleep(2 * LEASE_MS);
+        ShardCoordinator.Claim takeover = b.claim();
+        assertEquals(lapsed.getIndex(), takeover.getIndex());
+        assertEquals(lapsed.getAttempt() + 1, takeover.getAttempt());
+        assertEquals(a.file(lapsed, ".journal"), b.previousFile(takeover, ".journal"));
+        assertNotEquals(a.file(lapsed, ".journal"), b.file(takeover, ".journal"));
+
+        // The worker of the lapsed lease neither keeps nor completes the shard
+        assertFalse(a.renew(lapsed));
+        assertFalse(a.complete(lapsed, "shard-0-1.sorted.ndjson"));
+        assertTrue(b.renew(takeover));
+        assertTrue(b.complete(takeover, "shard-0-2.sorted.ndjson"));
+        assertTrue(b.complete(other, "shard-1-1.sorted.ndjson"));
+        assertEquals(new File(dir, "shard-0-2.sorted.ndjson"), a.getOutputs().get(0));
+    }
+
+    @Test
+    public void finishedRunIsReplacedByAnotherRun() throws IOException {
+
+        File dir = folder.newFolder("shards");
+        ShardCoordinator old = coordinator(dir, "old", "a");
+        ShardCoordinator.Claim claim;
+        while (null != (claim = old.claim())) {
+            Files.write(old.file(claim, ".ndjson").toPath(), new byte[0]);
+            old.complete(claim, old.file(claim, ".ndjson").getName());
+        }
+        assertTrue(old.isFinished());
+
+        // A late worker of the same run only sees it finished
+        assertTrue(coordinator(dir, "old", "b").isFinished());
+        assertEquals(1, setups.get());
+
+        ShardCoordinator next = coordinator(dir, "new", "b");
+        assertEquals(2, setups.get());
+        assertFalse(next.isFinished());
+        String[] left = dir.list((d, name) -> name.startsWith("shard-") || name.startsWith("merge-"));
+        assertEquals(0, left.length);
+        assertEquals(1, next.claim().getAttempt());
+    }
+
+    @Test
+    public void unfinishedRunIsNotJoinedByAnotherRun() throws IOException {
+
+        File dir = folder.newFolder("shards");
+        coordinator(dir, "old", "a").claim();
+        try {
+            coordinator(dir, "new", "b");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals(1, setups.get());
+        }
+    }
+}
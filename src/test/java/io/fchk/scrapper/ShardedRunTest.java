@@ -0,0 +1,111 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedRunTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shardOutputIsSortedWithTheFailedUrls() throws IOException {
+
+        File unsorted = folder.newFile();
+        try (DeclarationWriter writer = new DeclarationWriter(unsorted, DeclarationWriter.Format.NDJSON)) {
+            writer.write("http://c", declaration("Ç"));
+            writer.write("http://a", declaration("A"));
+            writer.write("http://d", declaration("D"));
+        }
+        File sorted = folder.newFile();
+        // d failed in a previous attempt, then succeeded
+        ShardedRun.sort(unsorted, new HashSet<>(Arrays.asList("http://b", "http://d")), sorted);
+
+        List<String> lines = Files.readAllLines(sorted.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals("http://a", Json.MAPPER.readTree(lines.get(0)).get("url").asText());
+        assertEquals("{\"url\":\"http://b\",\"failed\":true}", lines.get(1));
+        JsonNode c = Json.MAPPER.readTree(lines.get(2));
+        assertEquals("http://c", c.get("url").asText());
+        assertEquals("Ç", c.get("declaration").get("personName").asText());
+        assertEquals("D", Json.MAPPER.readTree(lines.get(3)).get("declaration").get("personName").asText());
+    }
+
+    @Test
+    public void sortedOutputsAreMergedInUrlOrderWithTheirDelta() throws IOException {
+
+        File previous = folder.newFile();
+        try (DeclarationWriter writer = new DeclarationWriter(previous, DeclarationWriter.Format.NDJSON)) {
+            writer.write("http://a", declaration("A0"));
+            writer.write("http://b", declaration("B"));
+            writer.write("http://e", declaration("E"));
+            writer.write("http://f", declaration("F"));
+        }
+        List<File> outputs = Arrays.asList(sorted("http://a", "http://d"), sorted("http://b", "http://c"), sorted());
+        Files.write(outputs.get(2).toPath(), "{\"url\":\"http://e\",\"failed\":true}\n".getBytes(StandardCharsets.UTF_8));
+        File merged = folder.newFile();
+        File delta = folder.newFile();
+        assertTrue(ShardedRun.merge(outputs, previous, merged, delta, DeclarationWriter.Format.NDJSON, () -> false));
+
+        List<String> urls = new ArrayList<>();
+        for (String line : Files.readAllLines(merged.toPath(), StandardCharsets.UTF_8)) {
+            urls.add(Json.MAPPER.readTree(line).get("url").asText());
+        }
+        assertEquals(Arrays.asList("http://a", "http://b", "http://c", "http://d"), urls);
+
+        List<String> ops = new ArrayList<>();
+        for (String line : Files.readAllLines(delta.toPath(), StandardCharsets.UTF_8)) {
+            JsonNode node = Json.MAPPER.readTree(line);
+            ops.add(node.get("op").asText() + " " + node.get("url").asText());
+        }
+        // e failed, so it is neither written nor removed
+        assertEquals(Arrays.asList("changed http://a", "added http://c", "added http://d", "removed http://f"), ops);
+    }
+
+    @Test
+    public void mergeStopsOnceTheLeaseIsLost() throws IOException {
+
+        File merged = folder.newFile();
+        Iterator<Boolean> lost = Arrays.asList(false, true).iterator();
+        assertFalse(ShardedRun.merge(Collections.singletonList(sorted("http://a", "http://b")), new File(folder.getRoot(), "none"), merged,
+                                     folder.newFile(), DeclarationWriter.Format.NDJSON, lost::next));
+    }
+
+    /**
+     * A sorted shard output of declarations named after the last letter of their url
+     */
+    private File sorted(String... urls) throws IOException {
+
+        File unsorted = folder.newFile();
+        try (DeclarationWriter writer = new DeclarationWriter(unsorted, DeclarationWriter.Format.NDJSON)) {
+            for (String url : urls) {
+                writer.write(url, declaration(url.substring(url.length() - 1).toUpperCase()));
+            }
+        }
+        File sorted = folder.newFile();
+        ShardedRun.sort(unsorted, Collections.emptySet(), sorted);
+        return sorted;
+    }
+
+    private static Declaration declaration(String name) {
+
+        return new Declaration().setPersonName(name).setRegion("HK");
+    }
+}
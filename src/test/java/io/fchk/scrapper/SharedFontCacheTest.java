@@ -0,0 +1,120 @@
+package io.fchk.scrapper;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SharedFontCacheTest {
+
+    private static final COSName F1 = COSName.getPDFName("F1");
+
+    @Test
+    public void fontIsReusedOnceItsDocumentIsClosed() throws IOException {
+
+        byte[] pdf = document('A');
+        PDFont first;
+        try (PDDocument document = load(pdf); SharedFontCache ignored = (SharedFontCache) document.getResourceCache()) {
+            first = font(document);
+            assertSame(first, font(document));
+        }
+        try (PDDocument document = load(pdf); SharedFontCache ignored = (SharedFontCache) document.getResourceCache()) {
+            assertSame(first, font(document));
+        }
+    }
+
+    @Test
+    public void documentsOpenAtOnceUseCopiesOfTheirOwn() throws IOException {
+
+        byte[] pdf = document('B');
+        PDFont first;
+        PDFont second;
+        try (PDDocument one = load(pdf); SharedFontCache ignoredOne = (SharedFontCache) one.getResourceCache();
+             PDDocument two = load(pdf); SharedFontCache ignoredTwo = (SharedFontCache) two.getResourceCache()) {
+            first = font(one);
+            second = font(two);
+            assertNotSame(first, second);
+        }
+        // Both copies are back, and each goes to one of two documents again
+        try (PDDocument one = load(pdf); SharedFontCache ignoredOne = (SharedFontCache) one.getResourceCache();
+             PDDocument two = load(pdf); SharedFontCache ignoredTwo = (SharedFontCache) two.getResourceCache()) {
+            PDFont again = font(one);
+            PDFont other = font(two);
+            assertNotSame(again, other);
+            assertTrue(again == first && other == second || again == second && other == first);
+        }
+    }
+
+    @Test
+    public void fontOfTheSameShapeButOtherBytesIsNotShared() throws IOException {
+
+        PDFont first;
+        try (PDDocument document = load(document('C')); SharedFontCache ignored = (SharedFontCache) document.getResourceCache()) {
+            first = font(document);
+            assertEquals("C", first.toUnicode(1));
+        }
+        try (PDDocument document = load(document('D')); SharedFontCache ignored = (SharedFontCache) document.getResourceCache()) {
+            PDFont font = font(document);
+            assertNotSame(first, font);
+            assertEquals("D", font.toUnicode(1));
+        }
+    }
+
+    private static PDDocument load(byte[] pdf) throws IOException {
+
+        PDDocument document = PDDocument.load(pdf);
+        document.setResourceCache(new SharedFontCache());
+        return document;
+    }
+
+    private static PDFont font(PDDocument document) throws IOException {
+
+        COSDictionary fonts = document.getPage(0).getResources().getCOSObject().getCOSDictionary(COSName.FONT);
+        return document.getResourceCache().getFont((COSObject) fonts.getItem(F1));
+    }
+
+    /**
+     * A document with a standard font whose {@code ToUnicode} map maps code 1 to the given character
+     */
+    private static byte[] document(char mapped) throws IOException {
+
+        try (PDDocument document = new PDDocument()) {
+            COSStream toUnicode = document.getDocument().createCOSStream();
+            try (OutputStream out = toUnicode.createOutputStream()) {
+                out.write(String.format("/CIDInit /ProcSet findresource begin\n12 dict begin\nbegincmap\n"
+                                        + "1 begincodespacerange\n<00> <FF>\nendcodespacerange\n"
+                                        + "1 beginbfchar\n<01> <%04X>\nendbfchar\n"
+                                        + "endcmap\nend\nend\n", (int) mapped).getBytes(StandardCharsets.US_ASCII));
+            }
+            COSDictionary font = new COSDictionary();
+            font.setItem(COSName.TYPE, COSName.FONT);
+            font.setItem(COSName.SUBTYPE, COSName.TYPE1);
+            font.setName(COSName.BASE_FONT, "Helvetica");
+            font.setItem(COSName.TO_UNICODE, toUnicode);
+            COSDictionary fonts = new COSDictionary();
+            fonts.setItem(F1, font);
+            PDPage page = new PDPage();
+            page.setResources(new PDResources());
+            page.getResources().getCOSObject().setItem(COSName.FONT, fonts);
+            document.addPage(page);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package io.fchk.scrapper;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.io.Resources;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The templates of {@code templates.json} against the outcome of the {@code PageParser} enum they replaced, kept in
+ * {@code templates-baseline.ndjson}: for each page of {@code pages.txt} and for {@link #VARIANTS} edited copies of it,
+ * the template the enum recognized and the declaration it parsed.
+ */
+public class TemplatesTest {
+
+    static final int VARIANTS = 10;
+
+    private static final ObjectMapper MAPPER = Json.MAPPER.copy().setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+
+    @Test
+    public void templatesClassifyAndParseLikeTheEnumTheyReplaced() throws IOException {
+
+        Templates templates = Templates.current();
+        List<String> expected = Resources.readLines(Resources.getResource("templates-baseline.ndjson"), StandardCharsets.UTF_8);
+        List<String> texts = variants(pages());
+        assertEquals(texts.size(), expected.size());
+        for (int i = 0; i < texts.size(); i++) {
+            PageContext content = new PageContext(texts.get(i), null);
+            PageParser parser = templates.classify(content);
+            Declaration declaration = new Declaration();
+            String error = null;
+            if (null != parser) {
+                try {
+                    parser.parse(content, declaration);
+                } catch (RuntimeException e) {
+                    error = e.getClass().getName();
+                }
+            }
+            assertEquals("Page " + i / (VARIANTS + 1) + ", variant " + i % (VARIANTS + 1) + "\n" + texts.get(i), expected.get(i),
+                         outcome(null == parser ? null : parser.getName(), declaration, error));
+        }
+    }
+
+    /**
+     * @return The outcome of a page, a line of the baseline.
+     */
+    static String outcome(String template, Declaration declaration, String error) throws IOException {
+
+        ObjectNode line = MAPPER.createObjectNode();
+        line.put("template", template);
+        line.set("declaration", MAPPER.valueToTree(declaration));
+        line.put("error", error);
+        return MAPPER.writeValueAsString(line);
+    }
+
+    /**
+     * @return The text of the page of each template in {@code pages.txt}.
+     */
+    static Map<String, String> pages() throws IOException {
+
+        Map<String, String> pages = new LinkedHashMap<>();
+        String current = null;
+        StringBuilder text = new StringBuilder();
+        for (String line : Resources.readLines(Resources.getResource("pages.txt"), StandardCharsets.UTF_8)) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("=== ")) {
+                if (null != current) {
+                    pages.put(current, text.toString());
+                }
+                current = line.substring(4).trim();
+                text.setLength(0);
+            } else {
+                text.append(line.replace("{TICK}", PageParser.TICK)).append('\n');
+            }
+        }
+        pages.put(current, text.toString());
+        return pages;
+    }
+
+    /**
+     * @return Each page followed by its edited copies, with spans deleted, repeated or taken from other pages, the same
+     * on every run.
+     */
+    static List<String> variants(Map<String, String> pages) {
+
+        List<String> others = new ArrayList<>(pages.values());
+        List<String> variants = new ArrayList<>();
+        Random random = new Random(7);
+        for (String page : pages.values()) {
+            variants.add(page);
+            for (int k = 0; k < VARIANTS; k++) {
+                StringBuilder text = new StringBuilder(page);
+                int edits = 1 + random.nextInt(6);
+                for (int e = 0; e < edits && text.length() > 1; e++) {
+                    int at = random.nextInt(text.length());
+                    int length = 1 + random.nextInt(Math.min(40, text.length() - at));
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            text.delete(at, at + length);
+                            break;
+                        case 1:
+                            int from = random.nextInt(text.length());
+                            text.insert(at, text.substring(from, Math.min(text.length(), from + 10)));
+                            break;
+                        default:
+                            String other = others.get(random.nextInt(others.size()));
+                            int start = random.nextInt(other.length() - 1);
+                            text.insert(at, other.substring(start, Math.min(other.length(), start + 60)));
+                    }
+                }
+                variants.add(text.toString());
+            }
+        }
+        return variants;
+    }
+}